@@ -45,7 +45,8 @@ import retrofit2.converter.scalars.ScalarsConverterFactory;
 
 public class UpholdClient {
 
-    private static UpholdClient instance;
+    private static volatile UpholdClient instance;
+    private static Runnable initializer;
     private final UpholdService service;
     private final SharedPreferences prefs;
     private final String encryptionKey;
@@ -123,7 +124,18 @@ public class UpholdClient {
         return instance;
     }
 
+    /**
+     * Sets what {@link #getInstance()} runs on the calling thread when {@link #init(Context, String)}
+     * was not called yet, for apps that initialize the client in the background.
+     */
+    public static void setInitializer(Runnable initializer) {
+        UpholdClient.initializer = initializer;
+    }
+
     public static UpholdClient getInstance() {
+        if (instance == null && initializer != null) {
+            initializer.run();
+        }
         if (instance == null) {
             throw new IllegalStateException("You must call UpholdClient#init() first");
         }
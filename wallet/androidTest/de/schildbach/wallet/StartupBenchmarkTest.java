@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ViewTreeObserver;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.ActivityTestRule;
+import androidx.test.runner.AndroidJUnit4;
+import androidx.test.runner.lifecycle.ActivityLifecycleCallback;
+import androidx.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
+import androidx.test.runner.lifecycle.Stage;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.KeyChainGroup;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.schildbach.wallet.ui.TransactionsIndex;
+import de.schildbach.wallet.ui.WalletActivity;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the cold start path: wallet deserialization, the wallet part of
+ * {@link WalletApplication#finalizeInitialization()} and the first transaction list for synthetic
+ * wallets of increasing size, plus the startup stages and the time to the first frame of
+ * {@link WalletActivity} on the device's own wallet. A test fails if a metric exceeds its budget,
+ * so a regression fails {@code connectedCheck}.
+ *
+ * Run it on its own, as the numbers mean nothing next to other tests:
+ * <pre>
+ * ./gradlew connected_testNet3DebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=de.schildbach.wallet.StartupBenchmarkTest
+ * </pre>
+ * Optional runner arguments: {@code benchmarkSizes} (comma separated transaction counts, default
+ * 1000,10000) and {@code benchmarkTolerance} (factor applied to all budgets, default 1.0). Wallets
+ * of 100000 transactions take minutes to build, so they are opt-in:
+ * {@code -Pandroid.testInstrumentationRunnerArguments.benchmarkSizes=1000,10000,100000}.
+ * Results are reported as instrumentation status, so they show up in the runner output.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmarkTest {
+
+    private static final String TAG = "StartupBenchmark";
+
+    private static final int RUNS = 3;
+
+    // budgets for a mid-range device, a fixed part plus a part per transaction
+    private static final long READ_WALLET_BUDGET_MS = 200;
+    private static final double READ_WALLET_BUDGET_PER_TX_MS = 0.15;
+    private static final long FINALIZE_WALLET_BUDGET_MS = 50;
+    private static final double FINALIZE_WALLET_BUDGET_PER_TX_MS = 0.02;
+    private static final long FIRST_LIST_BUDGET_MS = 50;
+    private static final double FIRST_LIST_BUDGET_PER_TX_MS = 0.02;
+    private static final long WALLET_STAGE_BUDGET_MS = 3000;
+    private static final long DASH_STAGE_BUDGET_MS = 2000;
+    private static final long FIRST_FRAME_BUDGET_MS = 1500;
+
+    @Rule
+    public ActivityTestRule<WalletActivity> activityRule = new ActivityTestRule<>(WalletActivity.class, false,
+            false);
+
+    private int[] sizes;
+    private double tolerance;
+
+    @Before
+    public void setUp() {
+        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+        final Bundle arguments = InstrumentationRegistry.getArguments();
+        final String sizesArgument = arguments.getString("benchmarkSizes", "1000,10000");
+        final String[] split = sizesArgument.split(",");
+        sizes = new int[split.length];
+        for (int i = 0; i < split.length; i++)
+            sizes[i] = Integer.parseInt(split[i].trim());
+        tolerance = Double.parseDouble(arguments.getString("benchmarkTolerance", "1.0"));
+    }
+
+    @Test
+    public void readWallet() throws Exception {
+        for (final int size : sizes) {
+            final byte[] serialized = serialize(createSyntheticWallet(size));
+
+            final long[] durations = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                final long start = SystemClock.elapsedRealtime();
+                new WalletProtobufSerializer().readWallet(new ByteArrayInputStream(serialized));
+                durations[run] = SystemClock.elapsedRealtime() - start;
+            }
+
+            report("read_wallet_" + size + "_ms", median(durations),
+                    READ_WALLET_BUDGET_MS + (long) (size * READ_WALLET_BUDGET_PER_TX_MS));
+        }
+    }
+
+    @Test
+    public void finalizeWallet() {
+        final WalletApplication application = WalletApplication.getInstance();
+        for (final int size : sizes) {
+            final Wallet wallet = createSyntheticWallet(size);
+
+            // the rest of the stage sets up the application's own wallet and does not depend on its size
+            final long[] durations = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                final long start = SystemClock.elapsedRealtime();
+                application.cleanupWallet(wallet);
+                durations[run] = SystemClock.elapsedRealtime() - start;
+            }
+
+            report("finalize_wallet_" + size + "_ms", median(durations),
+                    FINALIZE_WALLET_BUDGET_MS + (long) (size * FINALIZE_WALLET_BUDGET_PER_TX_MS));
+        }
+    }
+
+    @Test
+    public void firstTransactionList() {
+        for (final int size : sizes) {
+            final Wallet wallet = createSyntheticWallet(size);
+
+            // what the transactions loader does for its first result
+            final long[] durations = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                final TransactionsIndex index = new TransactionsIndex(wallet);
+                final long start = SystemClock.elapsedRealtime();
+                index.update();
+                index.snapshot(null);
+                durations[run] = SystemClock.elapsedRealtime() - start;
+            }
+
+            report("first_transaction_list_" + size + "_ms", median(durations),
+                    FIRST_LIST_BUDGET_MS + (long) (size * FIRST_LIST_BUDGET_PER_TX_MS));
+        }
+    }
+
+    @Test
+    public void startupStages() {
+        final WalletApplication application = WalletApplication.getInstance();
+        assumeTrue("needs a wallet on the device", application.walletFileExists());
+
+        // the stages ran when the instrumentation started the application
+        final Map<StartupInitializer.Stage, Long> durations = application.getStartup().getDurations();
+        for (final Map.Entry<StartupInitializer.Stage, Long> entry : durations.entrySet())
+            report("startup_" + entry.getKey().name().toLowerCase(Locale.US) + "_ms", entry.getValue(), Long.MAX_VALUE);
+
+        final Long walletStage = durations.get(StartupInitializer.Stage.WALLET);
+        if (walletStage != null)
+            assertBudget("startup_wallet_ms", walletStage, WALLET_STAGE_BUDGET_MS);
+        final Long dashStage = durations.get(StartupInitializer.Stage.DASH);
+        if (dashStage != null)
+            assertBudget("startup_dash_ms", dashStage, DASH_STAGE_BUDGET_MS);
+    }
+
+    @Test
+    public void walletActivityFirstFrame() throws Exception {
+        assumeTrue("needs a wallet on the device", WalletApplication.getInstance().walletFileExists());
+
+        // hooked in as soon as the content view is set, so the very first draw of the activity is seen
+        final long[] firstFrameAt = new long[1];
+        final CountDownLatch drawn = new CountDownLatch(1);
+        final ActivityLifecycleCallback lifecycleCallback = new ActivityLifecycleCallback() {
+            @Override
+            public void onActivityLifecycleChanged(final Activity activity, final Stage stage) {
+                if (!(activity instanceof WalletActivity) || stage != Stage.CREATED)
+                    return;
+                activity.getWindow().getDecorView().getViewTreeObserver()
+                        .addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+                            @Override
+                            public void onDraw() {
+                                if (drawn.getCount() > 0) {
+                                    firstFrameAt[0] = SystemClock.uptimeMillis();
+                                    drawn.countDown();
+                                }
+                            }
+                        });
+            }
+        };
+        ActivityLifecycleMonitorRegistry.getInstance().addLifecycleCallback(lifecycleCallback);
+        try {
+            final long start = SystemClock.uptimeMillis();
+            activityRule.launchActivity(null);
+            assertTrue("no frame drawn", drawn.await(10, TimeUnit.SECONDS));
+
+            report("wallet_activity_first_frame_ms", firstFrameAt[0] - start, FIRST_FRAME_BUDGET_MS);
+        } finally {
+            ActivityLifecycleMonitorRegistry.getInstance().removeLifecycleCallback(lifecycleCallback);
+        }
+    }
+
+    private static Wallet createSyntheticWallet(final int transactions) {
+        final Wallet wallet = new Wallet(Constants.NETWORK_PARAMETERS,
+                KeyChainGroup.builder(Constants.NETWORK_PARAMETERS).fromRandom(Script.ScriptType.P2PKH).build());
+        final Address address = wallet.freshReceiveAddress();
+        final long now = System.currentTimeMillis();
+
+        for (int i = 0; i < transactions; i++) {
+            final Transaction tx = new Transaction(Constants.NETWORK_PARAMETERS);
+            final byte[] seed = new byte[4];
+            Utils.uint32ToByteArrayBE(i, seed, 0);
+            tx.addInput(new TransactionInput(Constants.NETWORK_PARAMETERS, tx, new byte[0],
+                    new TransactionOutPoint(Constants.NETWORK_PARAMETERS, 0, Sha256Hash.of(seed))));
+            tx.addOutput(Coin.valueOf(100000 + i), address);
+            tx.setUpdateTime(new Date(now - (transactions - i) * 60000L));
+            tx.getConfidence().setAppearedAtChainHeight(1 + i);
+            tx.getConfidence().setConfidenceType(ConfidenceType.BUILDING);
+            wallet.addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
+        }
+        return wallet;
+    }
+
+    private static byte[] serialize(final Wallet wallet) throws Exception {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new WalletProtobufSerializer().writeWallet(wallet, os);
+        return os.toByteArray();
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private void report(final String metric, final long valueMs, final long budgetMs) {
+        Log.i(TAG, metric + ": " + valueMs + " ms");
+        final Bundle status = new Bundle();
+        status.putLong(metric, valueMs);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+        if (budgetMs != Long.MAX_VALUE)
+            assertBudget(metric, valueMs, budgetMs);
+    }
+
+    private void assertBudget(final String metric, final long valueMs, final long budgetMs) {
+        final long allowedMs = (long) (budgetMs * tolerance);
+        assertTrue(metric + " took " + valueMs + " ms, budget is " + allowedMs + " ms", valueMs <= allowedMs);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link Base43} against the schoolbook implementation it replaced, on the vectors of
+ * {@code Base43Test} and on inputs the size of signed payment requests and serialized
+ * transactions. Fails if the current implementation is slower or disagrees.
+ *
+ * Run it on its own, as the numbers mean nothing next to other tests:
+ * <pre>
+ * ./gradlew connected_testNet3DebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=de.schildbach.wallet.util.Base43BenchmarkTest
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class Base43BenchmarkTest {
+
+    private static final String TAG = "Base43Benchmark";
+
+    private static final int RUNS = 5;
+    private static final int ITERATIONS = 200;
+    private static final int[] SIZES = {200, 600, 1500};
+
+    @Test
+    public void vectors() {
+        for (final byte[] vector : new byte[][]{new byte[0], new byte[]{0x0}, new byte[]{(byte) 0xff},
+                "Hello World".getBytes()}) {
+            final String encoded = SchoolbookBase43.encode(vector);
+            assertEquals(encoded, Base43.encode(vector));
+            assertArrayEquals(SchoolbookBase43.decode(encoded), Base43.decode(encoded));
+        }
+    }
+
+    @Test
+    public void encode() {
+        for (final int size : SIZES) {
+            final byte[] input = randomBytes(size);
+            assertEquals(SchoolbookBase43.encode(input), Base43.encode(input));
+
+            final long schoolbookNs = median(new Runnable() {
+                @Override
+                public void run() {
+                    SchoolbookBase43.encode(input);
+                }
+            });
+            final char[] output = new char[Base43.maxEncodedLength(size)];
+            final long currentNs = median(new Runnable() {
+                @Override
+                public void run() {
+                    Base43.encode(input, 0, input.length, output, 0);
+                }
+            });
+            report("base43_encode_" + size, schoolbookNs, currentNs);
+        }
+    }
+
+    @Test
+    public void decode() {
+        for (final int size : SIZES) {
+            final String input = Base43.encode(randomBytes(size));
+            assertArrayEquals(SchoolbookBase43.decode(input), Base43.decode(input));
+
+            final long schoolbookNs = median(new Runnable() {
+                @Override
+                public void run() {
+                    SchoolbookBase43.decode(input);
+                }
+            });
+            final byte[] output = new byte[input.length()];
+            final long currentNs = median(new Runnable() {
+                @Override
+                public void run() {
+                    Base43.decode(input, 0, input.length(), output, 0);
+                }
+            });
+            report("base43_decode_" + size, schoolbookNs, currentNs);
+        }
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    // nanoseconds per call, median of the runs after a warm-up run
+    private static long median(final Runnable operation) {
+        final long[] durations = new long[RUNS];
+        for (int run = -1; run < RUNS; run++) {
+            final long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < ITERATIONS; i++)
+                operation.run();
+            if (run >= 0)
+                durations[run] = (SystemClock.elapsedRealtimeNanos() - start) / ITERATIONS;
+        }
+        Arrays.sort(durations);
+        return durations[RUNS / 2];
+    }
+
+    private static void report(final String metric, final long schoolbookNs, final long currentNs) {
+        Log.i(TAG, metric + ": schoolbook " + schoolbookNs + " ns, current " + currentNs + " ns");
+        final Bundle status = new Bundle();
+        status.putLong(metric + "_schoolbook_ns", schoolbookNs);
+        status.putLong(metric + "_ns", currentNs);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+        assertTrue(metric + " took " + currentNs + " ns, schoolbook took " + schoolbookNs + " ns",
+                currentNs <= schoolbookNs);
+    }
+
+    /**
+     * The implementation before chunked conversion: one full pass of division per digit.
+     */
+    private static class SchoolbookBase43 {
+        private static final char[] ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$*+-./:".toCharArray();
+
+        private static final int[] INDEXES = new int[128];
+        static {
+            Arrays.fill(INDEXES, -1);
+            for (int i = 0; i < ALPHABET.length; i++)
+                INDEXES[ALPHABET[i]] = i;
+        }
+
+        static String encode(byte[] input) {
+            if (input.length == 0)
+                return "";
+
+            input = Arrays.copyOf(input, input.length);
+
+            int zeroCount = 0;
+            while (zeroCount < input.length && input[zeroCount] == 0)
+                ++zeroCount;
+
+            final char[] temp = new char[input.length * 2];
+            int j = temp.length;
+
+            int startAt = zeroCount;
+            while (startAt < input.length) {
+                final int mod = divmod(input, startAt, 256, 43);
+                if (input[startAt] == 0)
+                    ++startAt;
+                temp[--j] = ALPHABET[mod];
+            }
+
+            while (j < temp.length && temp[j] == ALPHABET[0])
+                ++j;
+
+            while (--zeroCount >= 0)
+                temp[--j] = ALPHABET[0];
+
+            return new String(temp, j, temp.length - j);
+        }
+
+        static byte[] decode(final String input) {
+            if (input.length() == 0)
+                return new byte[0];
+
+            final byte[] input43 = new byte[input.length()];
+            for (int i = 0; i < input.length(); ++i)
+                input43[i] = (byte) INDEXES[input.charAt(i)];
+
+            int zeroCount = 0;
+            while (zeroCount < input43.length && input43[zeroCount] == 0)
+                ++zeroCount;
+
+            final byte[] temp = new byte[input.length()];
+            int j = temp.length;
+
+            int startAt = zeroCount;
+            while (startAt < input43.length) {
+                final int mod = divmod(input43, startAt, 43, 256);
+                if (input43[startAt] == 0)
+                    ++startAt;
+                temp[--j] = (byte) mod;
+            }
+
+            while (j < temp.length && temp[j] == 0)
+                ++j;
+
+            return Arrays.copyOfRange(temp, j - zeroCount, temp.length);
+        }
+
+        private static int divmod(final byte[] number, final int startAt, final int base, final int divisor) {
+            int remainder = 0;
+            for (int i = startAt; i < number.length; i++) {
+                final int temp = remainder * base + (number[i] & 0xFF);
+                number[i] = (byte) (temp / divisor);
+                remainder = temp % divisor;
+            }
+            return remainder;
+        }
+    }
+}
@@ -7,14 +7,19 @@ import androidx.room.TypeConverters;
 
 import de.schildbach.wallet.data.BlockchainState;
 import de.schildbach.wallet.data.BlockchainStateDao;
+import de.schildbach.wallet.data.PeerReputation;
+import de.schildbach.wallet.data.PeerReputationDao;
 import de.schildbach.wallet.data.RoomConverters;
+import de.schildbach.wallet.data.TransactionSummary;
+import de.schildbach.wallet.data.TransactionSummaryDao;
 import de.schildbach.wallet.rates.ExchangeRate;
 import de.schildbach.wallet.rates.ExchangeRatesDao;
 
 /**
  * @author Samuel Barbosa
  */
-@Database(entities = {ExchangeRate.class, BlockchainState.class}, version = 2)
+@Database(entities = {ExchangeRate.class, BlockchainState.class, TransactionSummary.class,
+        PeerReputation.class}, version = 5)
 @TypeConverters({RoomConverters.class})
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -22,6 +27,8 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract ExchangeRatesDao exchangeRatesDao();
     public abstract BlockchainStateDao blockchainStateDao();
+    public abstract TransactionSummaryDao transactionSummaryDao();
+    public abstract PeerReputationDao peerReputationDao();
 
     public static AppDatabase getAppDatabase() {
         if (instance == null) {
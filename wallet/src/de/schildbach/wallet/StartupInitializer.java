@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import android.os.Process;
+
+import com.google.common.base.Stopwatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the stages of the application startup in dependency order. Every stage runs at most once
+ * per registration: {@link #run(Stage)} runs it on the calling thread together with its
+ * dependencies, or waits for it if another thread got there first.
+ *
+ * Deferred stages are not needed to show the first screen. They are started on a background
+ * thread by {@link #startDeferred()}, which is meant to be called once the first frame is drawn.
+ * Code that depends on a deferred stage calls {@link #run(Stage)} before using it.
+ */
+public class StartupInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupInitializer.class);
+
+    public enum Stage {
+        ENVIRONMENT, WALLET, DASH, NOTIFICATION_CHANNELS, FILE_CLEANUP, BACKUP_CHECK
+    }
+
+    private final Executor executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                    runnable.run();
+                }
+            }, "startup");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // guarded by this
+    private final Map<Stage, FutureTask<Void>> tasks = new EnumMap<>(Stage.class);
+    private final Map<Stage, Stage[]> dependencies = new EnumMap<>(Stage.class);
+    private final EnumSet<Stage> deferred = EnumSet.noneOf(Stage.class);
+    private final Map<Stage, Long> durationsMs = new EnumMap<>(Stage.class);
+    private boolean deferredStarted = false;
+
+    // stages being run by the current thread, so a stage that ends up asking for itself does not wait forever
+    private final ThreadLocal<EnumSet<Stage>> runningOnThread = new ThreadLocal<EnumSet<Stage>>() {
+        @Override
+        protected EnumSet<Stage> initialValue() {
+            return EnumSet.noneOf(Stage.class);
+        }
+    };
+
+    /**
+     * Registers a stage that only runs when {@link #run(Stage)} asks for it. Registering a stage
+     * again replaces it, so it runs once more.
+     */
+    public void add(final Stage stage, final Runnable action, final Stage... dependsOn) {
+        register(stage, action, dependsOn, false);
+    }
+
+    /**
+     * Registers a stage that also runs in the background after {@link #startDeferred()}.
+     */
+    public void addDeferred(final Stage stage, final Runnable action, final Stage... dependsOn) {
+        register(stage, action, dependsOn, true);
+    }
+
+    private void register(final Stage stage, final Runnable action, final Stage[] dependsOn,
+                          final boolean isDeferred) {
+        final FutureTask<Void> task = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                final Stopwatch watch = Stopwatch.createStarted();
+                action.run();
+                watch.stop();
+                synchronized (StartupInitializer.this) {
+                    durationsMs.put(stage, watch.elapsed(TimeUnit.MILLISECONDS));
+                }
+                log.info("startup stage {} took {} on {}", stage, watch, Thread.currentThread().getName());
+            }
+        }, null);
+
+        final boolean startNow;
+        synchronized (this) {
+            tasks.put(stage, task);
+            dependencies.put(stage, dependsOn);
+            if (isDeferred)
+                deferred.add(stage);
+            else
+                deferred.remove(stage);
+            startNow = isDeferred && deferredStarted;
+        }
+        if (startNow)
+            runInBackground(stage);
+    }
+
+    /**
+     * Runs the stage and its dependencies unless they already ran, and returns once they are
+     * done. Does nothing for a stage that was never registered, or when called from within the
+     * stage itself.
+     */
+    public void run(final Stage stage) {
+        final FutureTask<Void> task;
+        final Stage[] dependsOn;
+        synchronized (this) {
+            task = tasks.get(stage);
+            dependsOn = dependencies.get(stage);
+        }
+        final EnumSet<Stage> running = runningOnThread.get();
+        if (task == null || running.contains(stage))
+            return;
+
+        running.add(stage);
+        try {
+            for (final Stage dependency : dependsOn)
+                run(dependency);
+
+            // a no-op if the task is already running or done, get() then waits for it
+            task.run();
+        } finally {
+            running.remove(stage);
+        }
+        try {
+            task.get();
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Starts the deferred stages in the background. Safe to call more than once.
+     */
+    public void startDeferred() {
+        final Set<Stage> stages;
+        synchronized (this) {
+            if (deferredStarted)
+                return;
+            deferredStarted = true;
+            stages = EnumSet.copyOf(deferred);
+        }
+        for (final Stage stage : stages)
+            runInBackground(stage);
+    }
+
+    private void runInBackground(final Stage stage) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    StartupInitializer.this.run(stage);
+                } catch (final RuntimeException x) {
+                    log.warn("startup stage " + stage + " failed", x);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the duration of every stage that ran, in milliseconds
+     */
+    public synchronized Map<Stage, Long> getDurations() {
+        return new EnumMap<>(durationsMs);
+    }
+}
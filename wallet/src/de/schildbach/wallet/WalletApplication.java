@@ -35,6 +35,8 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.media.AudioAttributes;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.text.format.DateUtils;
@@ -42,6 +44,8 @@ import android.widget.Toast;
 
 import androidx.annotation.StringRes;
 import androidx.appcompat.app.AppCompatDelegate;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.multidex.MultiDexApplication;
 
@@ -56,7 +60,6 @@ import org.bitcoinj.core.VerificationException;
 import org.bitcoinj.core.VersionMessage;
 import org.bitcoinj.crypto.LinuxSecureRandom;
 import org.bitcoinj.utils.Threading;
-import org.bitcoinj.wallet.Protos;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
@@ -70,14 +73,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import ch.qos.logback.classic.Level;
@@ -87,10 +86,13 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
-import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.data.SpentOutpointIndex;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.service.BlockchainService;
 import de.schildbach.wallet.service.BlockchainServiceImpl;
 import de.schildbach.wallet.service.BlockchainSyncJobService;
+import de.schildbach.wallet.service.SyncMetrics;
 import de.schildbach.wallet.ui.preference.PinRetryController;
 import de.schildbach.wallet.ui.security.SecurityGuard;
 import de.schildbach.wallet.util.CrashReporter;
@@ -107,12 +109,18 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
     private Configuration config;
     private ActivityManager activityManager;
 
-    private boolean basicWalletInitalizationFinished = false;
+    private final StartupInitializer startup = new StartupInitializer();
+    private final MutableLiveData<Boolean> walletReady = new MutableLiveData<>(false);
+    private volatile boolean walletInitialized = false;
 
     private Intent blockchainServiceIntent;
 
     private File walletFile;
     private Wallet wallet;
+    private WalletPersistence walletPersistence;
+    private WalletKeyBackup walletKeyBackup;
+    private WalletLoader walletLoader;
+    private SpentOutpointIndex spentOutpointIndex;
     private PackageInfo packageInfo;
 
     public static final String ACTION_WALLET_REFERENCE_CHANGED = WalletApplication.class.getPackage().getName()
@@ -126,6 +134,9 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
     private static final int BLOCKCHAIN_SYNC_JOB_ID = 1;
 
+    // deferred startup stages run after the first frame, or after this delay if no activity is shown
+    private static final long DEFERRED_STARTUP_DELAY_MS = 5 * DateUtils.SECOND_IN_MILLIS;
+
     public boolean myPackageReplaced = false;
 
     private AutoLogout autoLogout;
@@ -152,7 +163,8 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
             @Override
             protected void onStartedFirst(Activity activity) {
-
+                // runs after the first traversal of the window, i.e. once the first frame is drawn
+                activity.getWindow().getDecorView().post(startDeferredStagesRunnable);
             }
 
             @Override
@@ -174,25 +186,81 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
             }
         });
         walletFile = getFileStreamPath(Constants.Files.WALLET_FILENAME_PROTOBUF);
+        walletPersistence = new WalletPersistence(walletFile);
+        walletKeyBackup = new WalletKeyBackup(getFileStreamPath(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF));
+        walletLoader = new WalletLoader(walletFile);
+        // the Uphold client is set up with the wallet, screens restored before it is loaded wait for it
+        UpholdClient.setInitializer(new Runnable() {
+            @Override
+            public void run() {
+                getWallet();
+            }
+        });
+        startup.add(StartupInitializer.Stage.ENVIRONMENT, new Runnable() {
+            @Override
+            public void run() {
+                initEnvironment();
+            }
+        });
+        // these do not need the wallet, so services started before it is loaded can wait for them
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startup.addDeferred(StartupInitializer.Stage.NOTIFICATION_CHANNELS, new Runnable() {
+                @Override
+                public void run() {
+                    createNotificationChannels();
+                }
+            });
+        }
+        startup.addDeferred(StartupInitializer.Stage.FILE_CLEANUP, new Runnable() {
+            @Override
+            public void run() {
+                cleanupFiles();
+            }
+        });
+        new Handler().postDelayed(startDeferredStagesRunnable, DEFERRED_STARTUP_DELAY_MS);
         if (walletFileExists()) {
-            fullInitialization();
+            // the wallet is loaded in the background while the first activity starts, getWallet() waits for it
+            startup.run(StartupInitializer.Stage.ENVIRONMENT);
+            addWalletStages();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                    startup.run(StartupInitializer.Stage.DASH);
+                    onWalletInitialized();
+                }
+            }, "wallet-loader").start();
         }
     }
 
+    private final Runnable startDeferredStagesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startup.startDeferred();
+        }
+    };
+
     public void fullInitialization() {
-        initEnvironment();
-        loadWalletFromProtobuf();
+        addWalletStages();
+        startup.run(StartupInitializer.Stage.DASH);
+        onWalletInitialized();
+    }
+
+    private void addWalletStages() {
+        startup.add(StartupInitializer.Stage.WALLET, new Runnable() {
+            @Override
+            public void run() {
+                loadWalletFromProtobuf();
+            }
+        }, StartupInitializer.Stage.ENVIRONMENT);
+        addDashStage();
     }
 
     public void initEnvironmentIfNeeded() {
-        if (!basicWalletInitalizationFinished) {
-            initEnvironment();
-        }
+        startup.run(StartupInitializer.Stage.ENVIRONMENT);
     }
 
     private void initEnvironment() {
-        basicWalletInitalizationFinished = true;
-
         new LinuxSecureRandom(); // init proper random number generator
         initLogging();
 
@@ -229,6 +297,7 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
     public void setWallet(Wallet newWallet) {
         this.wallet = newWallet;
+        walletPersistence.setWallet(newWallet);
         if (!wallet.hasKeyChain(Constants.BIP44_PATH)) {
             wallet.addKeyChain(Constants.BIP44_PATH);
         }
@@ -243,25 +312,78 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
         finalizeInitialization();
     }
 
+    /**
+     * Runs what is needed to show the wallet and marks it as ready. The rest of the initialization
+     * is deferred until the first frame is drawn, see {@link #awaitStartupStage(StartupInitializer.Stage)}.
+     */
     public void finalizeInitialization() {
-        wallet.getContext().initDash(true, true);
+        addDashStage();
+        startup.run(StartupInitializer.Stage.DASH);
+        onWalletInitialized();
+    }
 
-        if (config.versionCodeCrossed(packageInfo.versionCode, VERSION_CODE_SHOW_BACKUP_REMINDER)
-                && !wallet.getImportedKeys().isEmpty()) {
-            log.info("showing backup reminder once, because of imported keys being present");
-            config.armBackupReminder();
-        }
+    private void addDashStage() {
+        startup.add(StartupInitializer.Stage.DASH, new Runnable() {
+            @Override
+            public void run() {
+                wallet.getContext().initDash(true, true);
 
-        config.updateLastVersionCode(packageInfo.versionCode);
+                if (config.versionCodeCrossed(packageInfo.versionCode, VERSION_CODE_SHOW_BACKUP_REMINDER)
+                        && !wallet.getImportedKeys().isEmpty()) {
+                    log.info("showing backup reminder once, because of imported keys being present");
+                    config.armBackupReminder();
+                }
 
-        afterLoadWallet();
+                config.updateLastVersionCode(packageInfo.versionCode);
 
-        cleanupFiles();
+                afterLoadWallet();
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            createNotificationChannels();
+                initUphold();
+            }
+        }, StartupInitializer.Stage.ENVIRONMENT, StartupInitializer.Stage.WALLET);
+    }
+
+    private void onWalletInitialized() {
+        walletInitialized = true;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            walletReady.setValue(true);
+        } else {
+            walletReady.postValue(true);
         }
-        initUphold();
+
+        startup.addDeferred(StartupInitializer.Stage.BACKUP_CHECK, new Runnable() {
+            @Override
+            public void run() {
+                backupWalletIfMissing();
+            }
+        }, StartupInitializer.Stage.DASH);
+    }
+
+    /**
+     * Blocks until the given startup stage is done, running it on the calling thread if it has
+     * not been started yet. Call this before using anything a deferred stage sets up.
+     */
+    public void awaitStartupStage(final StartupInitializer.Stage stage) {
+        startup.run(stage);
+    }
+
+    /**
+     * Blocks until the notification channels exist. The channels are created after the first
+     * frame, so services that post notifications and may start before it call this first.
+     */
+    public void awaitNotificationChannels() {
+        awaitStartupStage(StartupInitializer.Stage.NOTIFICATION_CHANNELS);
+    }
+
+    public StartupInitializer getStartup() {
+        return startup;
+    }
+
+    /**
+     * @return true once the wallet is loaded and initialized, for screens that cannot do without it
+     */
+    public LiveData<Boolean> getWalletReady() {
+        return walletReady;
     }
 
     private void initUphold() {
@@ -315,8 +437,17 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
     private void afterLoadWallet() {
         wallet.autosaveToFile(walletFile, Constants.Files.WALLET_AUTOSAVE_DELAY_MS, TimeUnit.MILLISECONDS, null);
+        walletPersistence.setWallet(wallet);
+        WalletBalanceRepository.getInstance().setWallet(wallet);
 
-        // clean up spam
+        cleanupWallet(wallet);
+    }
+
+    /**
+     * Cleans up spam, the part of {@link #finalizeInitialization()} that grows with the number of
+     * transactions. Package visible for the startup benchmark.
+     */
+    void cleanupWallet(final Wallet wallet) {
         try {
             wallet.cleanup();
         } catch (IllegalStateException x) {
@@ -328,10 +459,11 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
                 blockChainFile.delete();
             } else throw x;
         }
+    }
 
+    private void backupWalletIfMissing() {
         // make sure there is at least one recent backup
-        if (!getFileStreamPath(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF).exists())
-            backupWallet();
+        walletKeyBackup.requestBackupIfMissing(wallet);
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -402,54 +534,77 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
         return config;
     }
 
+    /**
+     * Waits for the wallet if it is still being loaded in the background.
+     */
     public Wallet getWallet() {
+        if (!walletInitialized)
+            startup.run(StartupInitializer.Stage.DASH);
         return wallet;
     }
 
-    private void loadWalletFromProtobuf() {
-        FileInputStream walletStream = null;
+    /**
+     * @return the progress of loading the wallet file in percent, for splash screens
+     */
+    public LiveData<Integer> getWalletLoadProgress() {
+        return walletLoader.getProgress();
+    }
 
-        try {
-            final Stopwatch watch = Stopwatch.createStarted();
-            walletStream = new FileInputStream(walletFile);
-            wallet = new WalletProtobufSerializer().readWallet(walletStream);
+    public WalletLoader getWalletLoader() {
+        return walletLoader;
+    }
 
-            if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
-                throw new UnreadableWalletException("bad wallet network parameters: " + wallet.getParams().getId());
+    /**
+     * @return the spent outpoints of the current wallet; the first query builds the index and
+     *         should not be made on the main thread
+     */
+    public synchronized SpentOutpointIndex getSpentOutpointIndex() {
+        if (spentOutpointIndex == null || spentOutpointIndex.getWallet() != wallet) {
+            if (spentOutpointIndex != null)
+                spentOutpointIndex.stop();
+            spentOutpointIndex = new SpentOutpointIndex(wallet);
+            spentOutpointIndex.start();
+        }
+        return spentOutpointIndex;
+    }
 
-            log.info("wallet loaded from: '{}', took {}", walletFile, watch);
-        } catch (final FileNotFoundException x) {
+    private void loadWalletFromProtobuf() {
+        try {
+            final Stopwatch watch = Stopwatch.createStarted();
+            wallet = walletLoader.load();
+            SyncMetrics.getInstance().recordPhase(SyncMetrics.Phase.WALLET_LOAD, watch.elapsed(TimeUnit.MILLISECONDS));
+        } catch (final IOException x) {
             log.error("problem loading wallet", x);
 
-            Toast.makeText(WalletApplication.this, x.getClass().getName(), Toast.LENGTH_LONG).show();
+            showToast(x.getClass().getName());
 
             wallet = restoreWalletFromBackup();
         } catch (final UnreadableWalletException x) {
             log.error("problem loading wallet", x);
 
-            Toast.makeText(WalletApplication.this, x.getClass().getName(), Toast.LENGTH_LONG).show();
+            showToast(x.getClass().getName());
 
             wallet = restoreWalletFromBackup();
-        } finally {
-            if (walletStream != null) {
-                try {
-                    walletStream.close();
-                } catch (final IOException x) {
-                    // swallow
-                }
-            }
         }
 
         if (!wallet.isConsistent()) {
-            Toast.makeText(this, "inconsistent wallet: " + walletFile, Toast.LENGTH_LONG).show();
+            showToast("inconsistent wallet: " + walletFile);
 
             wallet = restoreWalletFromBackup();
         }
 
         if (!wallet.getParams().equals(Constants.NETWORK_PARAMETERS))
             throw new Error("bad wallet network parameters: " + wallet.getParams().getId());
+    }
 
-        finalizeInitialization();
+    // the wallet may be loaded on a background thread
+    private void showToast(final String text) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(WalletApplication.this, text, Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private Wallet restoreWalletFromBackup() {
@@ -467,7 +622,7 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
             resetBlockchain();
 
-            Toast.makeText(this, R.string.toast_wallet_reset, Toast.LENGTH_LONG).show();
+            showToast(getString(R.string.toast_wallet_reset));
 
             log.info("wallet restored from backup: '" + Constants.Files.WALLET_KEY_BACKUP_PROTOBUF + "'");
 
@@ -485,57 +640,41 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
         }
     }
 
-    public void saveWallet() {
-        try {
-            protobufSerializeWallet(wallet);
-        } catch (final IOException x) {
-            throw new RuntimeException(x);
-        }
+    /**
+     * Requests the wallet to be written soon on a background thread. Use this for changes that
+     * happen in bursts, like tagging received transactions; many requests share one write.
+     */
+    public void saveWalletLater() {
+        walletPersistence.requestSave();
     }
 
-    private void protobufSerializeWallet(final Wallet wallet) throws IOException {
-        final Stopwatch watch = Stopwatch.createStarted();
-        wallet.saveToFile(walletFile);
-        watch.stop();
+    /**
+     * Writes the wallet and blocks until it is on disk.
+     */
+    public void saveWallet() {
+        walletPersistence.requestSave();
+        walletPersistence.flushAndWait();
+    }
 
-        log.info("wallet saved to: '{}', took {}", walletFile, watch);
+    public WalletPersistence getWalletPersistence() {
+        return walletPersistence;
     }
 
+    /**
+     * Requests the key backup to be written on a background thread, if the key chains changed
+     * since it was last written. Returns immediately.
+     */
     public void backupWallet() {
-        final Stopwatch watch = Stopwatch.createStarted();
-        final Protos.Wallet.Builder builder = new WalletProtobufSerializer().walletToProto(wallet).toBuilder();
-
-        // strip redundant
-        builder.clearTransaction();
-        builder.clearLastSeenBlockHash();
-        builder.setLastSeenBlockHeight(-1);
-        builder.clearLastSeenBlockTimeSecs();
-        final Protos.Wallet walletProto = builder.build();
-
-        OutputStream os = null;
-
-        try {
-            os = openFileOutput(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, Context.MODE_PRIVATE);
-            walletProto.writeTo(os);
-            watch.stop();
-            log.info("wallet backed up to: '{}', took {}", Constants.Files.WALLET_KEY_BACKUP_PROTOBUF, watch);
-        } catch (final IOException x) {
-            log.error("problem writing wallet backup", x);
-        } finally {
-            try {
-                os.close();
-            } catch (final IOException x) {
-                // swallow
-            }
-        }
+        walletKeyBackup.requestBackup(wallet);
     }
 
     private void cleanupFiles() {
         for (final String filename : fileList()) {
+            final File file = new File(getFilesDir(), filename);
+            // runs in the background, so leave temporary files of saves made by this process alone
             if (filename.startsWith(Constants.Files.WALLET_KEY_BACKUP_BASE58)
                     || filename.startsWith(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF + '.')
-                    || filename.endsWith(".tmp")) {
-                final File file = new File(getFilesDir(), filename);
+                    || (filename.endsWith(".tmp") && file.lastModified() < TIME_CREATE_APPLICATION)) {
                 log.info("removing obsolete file: '{}'", file);
                 file.delete();
             }
@@ -565,12 +704,7 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
     }
 
     public void resetBlockchainState() {
-        Executors.newSingleThreadExecutor().execute(new Runnable() {
-            @Override
-            public void run() {
-                AppDatabase.getAppDatabase().blockchainStateDao().save(new BlockchainState(true));
-            }
-        });
+        BlockchainStateRepository.getInstance().reset(true);
     }
 
     public void resetBlockchain() {
@@ -584,12 +718,14 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
     public void replaceWallet(final Wallet newWallet) {
         resetBlockchain();
         if (wallet != null) {
+            walletPersistence.flushAndWait();
             wallet.shutdownAutosaveAndWait();
         }
 
         wallet = newWallet;
         config.maybeIncrementBestChainHeightEver(newWallet.getLastBlockSeenHeight());
         afterLoadWallet();
+        backupWalletIfMissing();
 
         final Intent broadcast = new Intent(ACTION_WALLET_REFERENCE_CHANGED);
         broadcast.setPackage(getPackageName());
@@ -744,7 +880,10 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public void shutdownAndDeleteWallet() {
+        walletReady.postValue(false);
         if (walletFile.exists()) {
+            walletPersistence.setWallet(null);
+            WalletBalanceRepository.getInstance().setWallet(null);
             wallet.shutdownAutosaveAndWait();
             walletFile.delete();
         }
@@ -764,6 +903,7 @@ public class WalletApplication extends MultiDexApplication implements ResetAutoL
             log.warn("error occurred when removing security keys", e);
         }
 
+        walletKeyBackup.discardAndWait();
         File walletBackupFile = getFileStreamPath(Constants.Files.WALLET_KEY_BACKUP_PROTOBUF);
         if (walletBackupFile.exists()) {
             walletBackupFile.delete();
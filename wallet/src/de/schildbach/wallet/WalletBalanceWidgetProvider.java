@@ -22,11 +22,10 @@ import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.ComponentName;
 import android.content.Context;
-import android.os.AsyncTask;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.text.Spannable;
 import android.text.style.ForegroundColorSpan;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.RemoteViews;
 
@@ -42,7 +41,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.rates.ExchangeRate;
 import de.schildbach.wallet.ui.OnboardingActivity;
 import de.schildbach.wallet.ui.QuickReceiveActivity;
@@ -52,122 +57,178 @@ import de.schildbach.wallet_test.R;
 import static org.dash.wallet.common.Constants.PREFIX_ALMOST_EQUAL_TO;
 
 /**
+ * Balance and exchange rate are taken once per wallet change into a {@link Snapshot} on a
+ * background thread and shared by all widgets. A widget is only touched if its rendered text
+ * changed, and then with a partial update unless the launcher asked for the whole widget.
+ *
  * @author Andreas Schildbach
  */
 public class WalletBalanceWidgetProvider extends AppWidgetProvider {
 
     private static final Logger log = LoggerFactory.getLogger(WalletBalanceWidgetProvider.class);
 
-    private Coin getBalance(Context context) {
-        final WalletApplication application = (WalletApplication) context.getApplicationContext();
-        return application.getWallet().getBalance(BalanceType.ESTIMATED);
-    }
+    private static final String RENDERED_NOT_READY = "";
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean updatePending = new AtomicBoolean(false);
+
+    // only accessed on executor, keyed by app widget id
+    private static final SparseArray<String> renderedWidgets = new SparseArray<>();
 
     @Override
     public void onUpdate(final Context context, final AppWidgetManager appWidgetManager, final int[] appWidgetIds) {
-        if (!walletNotReady(context)) {
-            updateWidgets(context, appWidgetManager, appWidgetIds, getBalance(context));
-        }
+        forgetRenderedAndUpdate(context, appWidgetIds);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(final Context context, final AppWidgetManager appWidgetManager,
                                           final int appWidgetId, final Bundle newOptions) {
-        if (!walletNotReady(context)) {
-            updateWidget(context, appWidgetManager, appWidgetId, newOptions, getBalance(context));
-        }
+        forgetRenderedAndUpdate(context, new int[]{appWidgetId});
+    }
+
+    @Override
+    public void onDeleted(final Context context, final int[] appWidgetIds) {
+        forgetRendered(appWidgetIds);
+    }
+
+    /**
+     * Brings all widgets up to date. Can be called often: calls made while an update is still
+     * pending are merged into it.
+     */
+    public static void updateWidgets(final Context context) {
+        requestUpdate(context);
+    }
+
+    private static void requestUpdate(final Context context) {
+        if (!updatePending.compareAndSet(false, true))
+            return;
+
+        final WalletApplication application = (WalletApplication) context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // cleared first, so a change during this update schedules another one
+                updatePending.set(false);
+                updateAllWidgets(application);
+            }
+        });
+    }
+
+    /**
+     * Not merged into a pending update, which may already have rendered the widgets with their
+     * previous options. Forgetting and updating in one task makes sure they are rendered again.
+     */
+    private static void forgetRenderedAndUpdate(final Context context, final int[] appWidgetIds) {
+        final WalletApplication application = (WalletApplication) context.getApplicationContext();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final int appWidgetId : appWidgetIds)
+                    renderedWidgets.remove(appWidgetId);
+                updateAllWidgets(application);
+            }
+        });
     }
 
-    public static void updateWidgets(final Context context, final Wallet wallet) {
-        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-        final ComponentName providerName = new ComponentName(context, WalletBalanceWidgetProvider.class);
+    private static void forgetRendered(final int[] appWidgetIds) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final int appWidgetId : appWidgetIds)
+                    renderedWidgets.remove(appWidgetId);
+            }
+        });
+    }
+
+    // must be called on executor
+    private static void updateAllWidgets(final WalletApplication application) {
+        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+        final AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(application);
+        final ComponentName providerName = new ComponentName(application, WalletBalanceWidgetProvider.class);
         try {
             final int[] appWidgetIds = appWidgetManager.getAppWidgetIds(providerName);
             if (appWidgetIds.length > 0) {
-                final Coin balance = wallet.getBalance(BalanceType.ESTIMATED);
-                updateWidgets(context, appWidgetManager, appWidgetIds, balance);
+                final Snapshot snapshot = Snapshot.take(application);
+                for (final int appWidgetId : appWidgetIds) {
+                    final Bundle options = getAppWidgetOptions(appWidgetManager, appWidgetId);
+                    updateWidget(application, appWidgetManager, appWidgetId, options, snapshot);
+                }
             }
         } catch (final RuntimeException x) {// system server dead?
             log.warn("cannot update app widgets", x);
         }
     }
 
-    private static void updateWidgets(final Context context, final AppWidgetManager appWidgetManager,
-                                      final int[] appWidgetIds, final Coin balance) {
-        for (final int appWidgetId : appWidgetIds) {
-            final Bundle options = getAppWidgetOptions(appWidgetManager, appWidgetId);
-            updateWidget(context, appWidgetManager, appWidgetId, options, balance);
-        }
-    }
-
+    // must be called on executor
     private static void updateWidget(final Context context, final AppWidgetManager appWidgetManager,
-                                     final int appWidgetId, final Bundle appWidgetOptions, final Coin balance) {
-
+                                     final int appWidgetId, final Bundle appWidgetOptions, final Snapshot snapshot) {
         final RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.wallet_balance_widget_content);
-        boolean walletNotReady = walletNotReady(context);
-        views.setViewVisibility(R.id.main_pane, walletNotReady ? View.GONE : View.VISIBLE);
-        views.setViewVisibility(R.id.wallet_not_initialized_message, walletNotReady ? View.VISIBLE : View.GONE);
-        views.setOnClickPendingIntent(R.id.widget_button_balance,
-                PendingIntent.getActivity(context, 0, OnboardingActivity.createIntent(context), 0));
+        final boolean walletNotReady = snapshot.balance == null;
 
         if (walletNotReady) {
+            if (RENDERED_NOT_READY.equals(renderedWidgets.get(appWidgetId)))
+                return;
+            views.setViewVisibility(R.id.main_pane, View.GONE);
+            views.setViewVisibility(R.id.wallet_not_initialized_message, View.VISIBLE);
+            views.setOnClickPendingIntent(R.id.widget_button_balance,
+                    PendingIntent.getActivity(context, 0, OnboardingActivity.createIntent(context), 0));
             appWidgetManager.updateAppWidget(appWidgetId, views);
+            renderedWidgets.put(appWidgetId, RENDERED_NOT_READY);
             return;
         }
 
-        final Configuration config = new Configuration(PreferenceManager.getDefaultSharedPreferences(context),
-                context.getResources());
-        final MonetaryFormat btcFormat = config.getFormat();
+        final Spannable balanceStr = new MonetarySpannable(snapshot.format.noCode(), snapshot.balance)
+                .applyMarkup(null, MonetarySpannable.STANDARD_INSIGNIFICANT_SPANS);
+        final Spannable localBalanceStr;
+        if (snapshot.exchangeRate != null) {
+            final org.bitcoinj.utils.ExchangeRate rate = new org.bitcoinj.utils.ExchangeRate(Coin.COIN,
+                    snapshot.exchangeRate.getFiat());
+            final Fiat localBalance = rate.coinToFiat(snapshot.balance);
+            final MonetaryFormat localFormat = Constants.LOCAL_FORMAT.code(0,
+                    PREFIX_ALMOST_EQUAL_TO + GenericUtils.currencySymbol(snapshot.exchangeRate.getCurrencyCode()));
+            final Object[] prefixSpans = new Object[]{MonetarySpannable.SMALLER_SPAN,
+                    new ForegroundColorSpan(context.getResources().getColor(R.color.fg_less_significant))};
+            localBalanceStr = new MonetarySpannable(localFormat, localBalance).applyMarkup(prefixSpans,
+                    MonetarySpannable.STANDARD_INSIGNIFICANT_SPANS);
+        } else {
+            localBalanceStr = null;
+        }
 
-        final Spannable balanceStr = new MonetarySpannable(btcFormat.noCode(), balance).applyMarkup(null,
-                MonetarySpannable.STANDARD_INSIGNIFICANT_SPANS);
+        final String previous = renderedWidgets.get(appWidgetId);
+        final String rendered = balanceStr + "|" + localBalanceStr;
+        if (rendered.equals(previous))
+            return;
 
-        new AsyncTask<Context, Void, ExchangeRate>() {
-            @Override
-            protected ExchangeRate doInBackground(Context... contexts) {
-                return AppDatabase.getAppDatabase().exchangeRatesDao()
-                        .getRateSync(config.getExchangeCurrencyCode());
-            }
+        views.setTextViewText(R.id.widget_wallet_balance_btc, balanceStr);
+        views.setViewVisibility(R.id.widget_wallet_balance_local, localBalanceStr != null ? View.VISIBLE : View.GONE);
+        views.setTextViewText(R.id.widget_wallet_balance_local, localBalanceStr);
 
-            @Override
-            protected void onPostExecute(ExchangeRate exchangeRate) {
-                super.onPostExecute(exchangeRate);
-
-                final Spannable localBalanceStr;
-                if (exchangeRate != null) {
-                    org.bitcoinj.utils.ExchangeRate rate = new org.bitcoinj.utils.ExchangeRate(Coin.COIN,
-                            exchangeRate.getFiat());
-                    final Fiat localBalance = rate.coinToFiat(balance);
-                    final MonetaryFormat localFormat = Constants.LOCAL_FORMAT.code(0,
-                            PREFIX_ALMOST_EQUAL_TO + GenericUtils.currencySymbol(exchangeRate.getCurrencyCode()));
-                    final Object[] prefixSpans = new Object[]{MonetarySpannable.SMALLER_SPAN,
-                            new ForegroundColorSpan(context.getResources().getColor(R.color.fg_less_significant))};
-                    localBalanceStr = new MonetarySpannable(localFormat, localBalance).applyMarkup(prefixSpans,
-                            MonetarySpannable.STANDARD_INSIGNIFICANT_SPANS);
-                } else {
-                    localBalanceStr = null;
-                }
+        if (previous != null && !previous.equals(RENDERED_NOT_READY)) {
+            // only the text changed, the rest of the widget is still in place
+            appWidgetManager.partiallyUpdateAppWidget(appWidgetId, views);
+            renderedWidgets.put(appWidgetId, rendered);
+            return;
+        }
 
-                views.setTextViewText(R.id.widget_wallet_balance_btc, balanceStr);
-                views.setViewVisibility(R.id.widget_wallet_balance_local, localBalanceStr != null ? View.VISIBLE : View.GONE);
-                views.setTextViewText(R.id.widget_wallet_balance_local, localBalanceStr);
+        views.setViewVisibility(R.id.main_pane, View.VISIBLE);
+        views.setViewVisibility(R.id.wallet_not_initialized_message, View.GONE);
 
-                if (appWidgetOptions != null) {
-                    final int minWidth = appWidgetOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-                    views.setViewVisibility(R.id.widget_button_request, minWidth > 200 ? View.VISIBLE : View.GONE);
-                    views.setViewVisibility(R.id.widget_button_send_qr, minWidth > 100 ? View.VISIBLE : View.GONE);
-                }
+        if (appWidgetOptions != null) {
+            final int minWidth = appWidgetOptions.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            views.setViewVisibility(R.id.widget_button_request, minWidth > 200 ? View.VISIBLE : View.GONE);
+            views.setViewVisibility(R.id.widget_button_send_qr, minWidth > 100 ? View.VISIBLE : View.GONE);
+        }
 
-                views.setOnClickPendingIntent(R.id.widget_button_balance,
-                        PendingIntent.getActivity(context, 0, OnboardingActivity.createIntent(context), 0));
-                views.setOnClickPendingIntent(R.id.widget_button_request,
-                        PendingIntent.getActivity(context, 0, QuickReceiveActivity.createIntent(context), 0));
-                views.setOnClickPendingIntent(R.id.widget_button_send_qr,
-                        PendingIntent.getActivity(context, 0, SendCoinsQrActivity.createIntent(context, true), 0));
+        views.setOnClickPendingIntent(R.id.widget_button_balance,
+                PendingIntent.getActivity(context, 0, OnboardingActivity.createIntent(context), 0));
+        views.setOnClickPendingIntent(R.id.widget_button_request,
+                PendingIntent.getActivity(context, 0, QuickReceiveActivity.createIntent(context), 0));
+        views.setOnClickPendingIntent(R.id.widget_button_send_qr,
+                PendingIntent.getActivity(context, 0, SendCoinsQrActivity.createIntent(context, true), 0));
 
-                appWidgetManager.updateAppWidget(appWidgetId, views);
-            }
-        }.execute(context);
+        appWidgetManager.updateAppWidget(appWidgetId, views);
+        renderedWidgets.put(appWidgetId, rendered);
     }
 
     private static Bundle getAppWidgetOptions(final AppWidgetManager appWidgetManager, final int appWidgetId) {
@@ -180,7 +241,31 @@ public class WalletBalanceWidgetProvider extends AppWidgetProvider {
         }
     }
 
-    private static boolean walletNotReady(Context context) {
-        return ((WalletApplication) context.getApplicationContext()).getWallet() == null;
+    private static final class Snapshot {
+        @Nullable
+        final Coin balance; // null if there is no wallet yet
+        @Nullable
+        final ExchangeRate exchangeRate;
+        final MonetaryFormat format;
+
+        private Snapshot(@Nullable final Coin balance, @Nullable final ExchangeRate exchangeRate,
+                         final MonetaryFormat format) {
+            this.balance = balance;
+            this.exchangeRate = exchangeRate;
+            this.format = format;
+        }
+
+        // waits for the wallet if it is still loading, so not on the main thread
+        static Snapshot take(final WalletApplication application) {
+            final Configuration config = application.getConfiguration();
+            final Wallet wallet = application.getWallet();
+            if (wallet == null)
+                return new Snapshot(null, null, config.getFormat());
+
+            final Coin balance = WalletBalanceRepository.getInstance().getBalanceSync(BalanceType.ESTIMATED);
+            final ExchangeRate exchangeRate = AppDatabase.getAppDatabase().exchangeRatesDao()
+                    .getRateSync(config.getExchangeCurrencyCode());
+            return new Snapshot(balance, exchangeRate, config.getFormat());
+        }
     }
 }
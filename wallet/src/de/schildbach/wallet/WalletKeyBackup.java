@@ -0,0 +1,283 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import android.os.Process;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+
+import org.bitcoinj.crypto.KeyCrypter;
+import org.bitcoinj.crypto.KeyCrypterScrypt;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletExtension;
+import org.bitcoinj.wallet.WalletLocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes the key backup of the wallet on a single background thread. The backup holds everything
+ * of the wallet but its transactions and is used to recover when the wallet file is unreadable.
+ *
+ * A backup is only written if the key chains changed since the last one this process wrote, as
+ * told by a fingerprint that is cheap to compute. The file is replaced atomically, so a crash
+ * while writing leaves the previous backup in place.
+ */
+public class WalletKeyBackup {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletKeyBackup.class);
+
+    private final File backupFile;
+    private final File tempFile;
+    private final ExecutorService writer;
+
+    // guarded by this
+    @Nullable
+    private Wallet pendingWallet;
+    private boolean pendingOnlyIfMissing;
+
+    // only accessed on writer
+    @Nullable
+    private HashCode lastFingerprint;
+
+    public WalletKeyBackup(final File backupFile) {
+        this.backupFile = backupFile;
+        // hidden, so it is not mistaken for an obsolete backup when cleaning up files
+        this.tempFile = new File(backupFile.getParentFile(), "." + backupFile.getName() + ".tmp");
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                        runnable.run();
+                    }
+                }, "wallet-backup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.writer = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Requests a backup of the wallet unless its key chains did not change since the last backup.
+     * Returns immediately.
+     */
+    public void requestBackup(final Wallet wallet) {
+        request(wallet, false);
+    }
+
+    /**
+     * Requests a backup of the wallet only if there is no backup file yet. Returns immediately.
+     */
+    public void requestBackupIfMissing(final Wallet wallet) {
+        request(wallet, true);
+    }
+
+    private void request(final Wallet wallet, final boolean onlyIfMissing) {
+        final boolean schedule;
+        synchronized (this) {
+            schedule = pendingWallet == null;
+            // a request for the full check wins over one that only looks for the file
+            pendingOnlyIfMissing = (schedule || pendingOnlyIfMissing) && onlyIfMissing;
+            pendingWallet = wallet;
+        }
+        if (schedule)
+            writer.execute(backupRunnable);
+    }
+
+    /**
+     * Drops pending requests and blocks until a backup that is already being written is done.
+     * Call this before deleting the backup file.
+     */
+    public void discardAndWait() {
+        synchronized (this) {
+            pendingWallet = null;
+        }
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    lastFingerprint = null;
+                }
+            }).get();
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while discarding wallet backup");
+        } catch (final ExecutionException x) {
+            throw new RuntimeException(x.getCause());
+        }
+    }
+
+    private final Runnable backupRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Wallet wallet;
+            final boolean onlyIfMissing;
+            synchronized (WalletKeyBackup.this) {
+                wallet = pendingWallet;
+                onlyIfMissing = pendingOnlyIfMissing;
+                pendingWallet = null;
+            }
+            if (wallet == null)
+                return;
+
+            final boolean exists = backupFile.exists();
+            if (onlyIfMissing && exists)
+                return;
+            final HashCode fingerprint = fingerprint(wallet);
+            if (exists && fingerprint.equals(lastFingerprint)) {
+                log.info("key chains unchanged, not backing up wallet");
+                return;
+            }
+
+            final Stopwatch watch = Stopwatch.createStarted();
+            try {
+                write(WalletLocks.getLocked(wallet, new Supplier<Protos.Wallet>() {
+                    @Override
+                    public Protos.Wallet get() {
+                        return keyBackupToProto(wallet);
+                    }
+                }));
+                lastFingerprint = fingerprint;
+                watch.stop();
+                log.info("wallet backed up to: '{}', {} bytes, took {}", backupFile, backupFile.length(), watch);
+            } catch (final IOException x) {
+                log.error("problem writing wallet backup", x);
+            }
+        }
+    };
+
+    private void write(final Protos.Wallet walletProto) throws IOException {
+        boolean written = false;
+        try {
+            final FileOutputStream os = new FileOutputStream(tempFile);
+            try {
+                walletProto.writeTo(os);
+                os.flush();
+                os.getFD().sync();
+            } finally {
+                os.close();
+            }
+            if (!tempFile.renameTo(backupFile))
+                throw new IOException("could not rename " + tempFile + " to " + backupFile);
+            written = true;
+        } finally {
+            if (!written)
+                tempFile.delete();
+        }
+    }
+
+    /**
+     * Covers what decides the content of the key backup, but for the data of wallet extensions,
+     * which is too expensive to look at. Extensions are told apart by their id only.
+     */
+    static HashCode fingerprint(final Wallet wallet) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(System.identityHashCode(wallet));
+        hasher.putBytes(wallet.getWatchingKey().getPubKey());
+        hasher.putInt(wallet.getKeyChainGroupSize());
+        hasher.putInt(wallet.getImportedKeys().size());
+        hasher.putInt(wallet.getWatchedScripts().size());
+        hasher.putBoolean(wallet.isEncrypted());
+        hasher.putInt(Objects.hashCode(wallet.getKeyCrypter()));
+        final Date keyRotationTime = wallet.getKeyRotationTime();
+        hasher.putLong(keyRotationTime != null ? keyRotationTime.getTime() : 0);
+        for (final String extensionId : wallet.getExtensions().keySet())
+            hasher.putString(extensionId, Charsets.UTF_8);
+        hasher.putString(Strings.nullToEmpty(wallet.getDescription()), Charsets.UTF_8);
+        for (final Map.Entry<String, ByteString> tag : wallet.getTags().entrySet()) {
+            hasher.putString(tag.getKey(), Charsets.UTF_8);
+            hasher.putBytes(tag.getValue().toByteArray());
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Builds what {@code WalletProtobufSerializer.walletToProto()} does, without the transactions
+     * and the last seen block. A wallet restored from it replays the block chain. Call it with the
+     * wallet locked, see {@link WalletLocks}, or keys and encryption may be read half-changed.
+     */
+    static Protos.Wallet keyBackupToProto(final Wallet wallet) {
+        final Protos.Wallet.Builder builder = Protos.Wallet.newBuilder();
+        builder.setNetworkIdentifier(wallet.getNetworkParameters().getId());
+        if (wallet.getDescription() != null)
+            builder.setDescription(wallet.getDescription());
+        builder.addAllKey(wallet.serializeKeyChainGroupToProtobuf());
+
+        for (final Script script : wallet.getWatchedScripts()) {
+            builder.addWatchedScript(Protos.Script.newBuilder()
+                    .setProgram(ByteString.copyFrom(script.getProgram()))
+                    .setCreationTimestamp(script.getCreationTimeSeconds() * 1000));
+        }
+
+        builder.setLastSeenBlockHeight(-1);
+
+        final KeyCrypter keyCrypter = wallet.getKeyCrypter();
+        if (keyCrypter == null) {
+            builder.setEncryptionType(Protos.Wallet.EncryptionType.UNENCRYPTED);
+        } else {
+            builder.setEncryptionType(keyCrypter.getUnderstoodEncryptionType());
+            if (keyCrypter instanceof KeyCrypterScrypt)
+                builder.setEncryptionParameters(((KeyCrypterScrypt) keyCrypter).getScryptParameters());
+            else
+                throw new IllegalStateException("unknown key crypter: " + keyCrypter.getClass().getName());
+        }
+
+        final Date keyRotationTime = wallet.getKeyRotationTime();
+        if (keyRotationTime != null)
+            builder.setKeyRotationTime(keyRotationTime.getTime() / 1000);
+
+        for (final WalletExtension extension : wallet.getExtensions().values()) {
+            builder.addExtension(Protos.Extension.newBuilder()
+                    .setId(extension.getWalletExtensionID())
+                    .setMandatory(extension.isWalletExtensionMandatory())
+                    .setData(ByteString.copyFrom(extension.serializeWalletExtension())));
+        }
+
+        for (final Map.Entry<String, ByteString> tag : wallet.getTags().entrySet())
+            builder.addTags(Protos.Tag.newBuilder().setTag(tag.getKey()).setData(tag.getValue()));
+
+        builder.setVersion(wallet.getVersion());
+        return builder.build();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.common.base.Stopwatch;
+
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.UnreadableWalletException;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the wallet file and reports how far it got, so a splash screen can show progress while
+ * a large wallet is being loaded. The file is read through a large buffer, parsed into its
+ * protobuf message and then turned into a {@link Wallet}; both steps are timed.
+ */
+public class WalletLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletLoader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // share of the progress bar for parsing the file; building the wallet takes the rest
+    private static final int PARSE_PROGRESS = 80;
+
+    private final File walletFile;
+    private final MutableLiveData<Integer> progress = new MutableLiveData<>();
+
+    // guarded by this
+    private long bytes = 0;
+    private long parseMs = 0;
+    private long buildMs = 0;
+
+    public WalletLoader(final File walletFile) {
+        this.walletFile = walletFile;
+    }
+
+    /**
+     * @return the loading progress in percent, or no value if nothing is being loaded
+     */
+    public LiveData<Integer> getProgress() {
+        return progress;
+    }
+
+    /**
+     * Loads the wallet on the calling thread, which should not be the main thread.
+     */
+    public Wallet load() throws IOException, UnreadableWalletException {
+        final long length = walletFile.length();
+        progress.postValue(0);
+
+        final Stopwatch parseWatch = Stopwatch.createStarted();
+        final Protos.Wallet proto;
+        try (final InputStream is = new ProgressInputStream(
+                new BufferedInputStream(new FileInputStream(walletFile), BUFFER_SIZE), length)) {
+            proto = WalletProtobufSerializer.parseToProto(is);
+        }
+        parseWatch.stop();
+
+        if (!Constants.NETWORK_PARAMETERS.getId().equals(proto.getNetworkIdentifier()))
+            throw new UnreadableWalletException("bad wallet network parameters: " + proto.getNetworkIdentifier());
+
+        final Stopwatch buildWatch = Stopwatch.createStarted();
+        final Wallet wallet = new WalletProtobufSerializer().readWallet(Constants.NETWORK_PARAMETERS, null, proto);
+        buildWatch.stop();
+        progress.postValue(100);
+
+        synchronized (this) {
+            bytes = length;
+            parseMs = parseWatch.elapsed(TimeUnit.MILLISECONDS);
+            buildMs = buildWatch.elapsed(TimeUnit.MILLISECONDS);
+        }
+        log.info("wallet loaded from: '{}', {} bytes, {} transactions, parsing took {}, building took {}",
+                walletFile, length, proto.getTransactionCount(), parseWatch, buildWatch);
+        return wallet;
+    }
+
+    /**
+     * @return a one line summary of the last load, for bug reports
+     */
+    public synchronized String getReport() {
+        return String.format(Locale.US, "%d bytes, parsing %d ms, building %d ms", bytes, parseMs, buildMs);
+    }
+
+    private class ProgressInputStream extends FilterInputStream {
+        private final long length;
+        private long read = 0;
+        private int lastPercent = 0;
+
+        private ProgressInputStream(final InputStream in, final long length) {
+            super(in);
+            this.length = Math.max(length, 1);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+            final int n = super.read(buffer, offset, count);
+            if (n > 0)
+                count(n);
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(final long n) {
+            read += n;
+            final int percent = (int) (read * PARSE_PROGRESS / length);
+            if (percent != lastPercent) {
+                lastPercent = percent;
+                progress.postValue(percent);
+            }
+        }
+    }
+}
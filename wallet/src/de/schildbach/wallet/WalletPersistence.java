@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import android.os.Process;
+
+import com.google.common.base.Stopwatch;
+
+import org.bitcoinj.wallet.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.service.SyncMetrics;
+
+/**
+ * Writes the wallet file on a single background thread. Save requests are coalesced: the first
+ * request schedules a write {@link #SAVE_DELAY_MS} later and every request made until then is
+ * served by that same write, so no change waits longer than that for being persisted.
+ *
+ * bitcoinj's own autosave keeps running next to this; both end up in
+ * {@link Wallet#saveToFile(File)}, which is serialized by the wallet lock.
+ */
+public class WalletPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletPersistence.class);
+
+    private static final long SAVE_DELAY_MS = 1000;
+
+    private final File walletFile;
+    private final ScheduledExecutorService writer;
+
+    // guarded by this
+    @Nullable
+    private Wallet wallet;
+    @Nullable
+    private ScheduledFuture<?> scheduledSave;
+    private boolean dirty = false;
+    private int requestCount = 0;
+
+    // guarded by this, statistics of the writes done so far
+    private int saveCount = 0;
+    private long lastSaveBytes = 0;
+    private long lastSaveDurationMs = 0;
+    private long totalSaveDurationMs = 0;
+
+    public WalletPersistence(final File walletFile) {
+        this.walletFile = walletFile;
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "wallet-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.writer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    }
+
+    /**
+     * Sets the wallet to be persisted. Pending writes of the previous wallet are discarded, so
+     * call {@link #flushAndWait()} first if they matter. Pass null before deleting the wallet file.
+     */
+    public synchronized void setWallet(@Nullable final Wallet wallet) {
+        if (scheduledSave != null) {
+            scheduledSave.cancel(false);
+            scheduledSave = null;
+        }
+        dirty = false;
+        this.wallet = wallet;
+    }
+
+    /**
+     * Requests the wallet to be written within {@link #SAVE_DELAY_MS}. Returns immediately.
+     */
+    public synchronized void requestSave() {
+        if (wallet == null)
+            return;
+
+        requestCount++;
+        dirty = true;
+        if (scheduledSave == null)
+            scheduledSave = writer.schedule(saveRunnable, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending changes right away and blocks until they are on disk. Meant for
+     * shutdown paths and for callers that read the wallet file right after.
+     */
+    public void flushAndWait() {
+        synchronized (this) {
+            if (scheduledSave != null)
+                scheduledSave.cancel(false);
+            scheduledSave = null;
+        }
+
+        // also waits for a write that is already running, as there is only one writer thread
+        try {
+            writer.submit(saveRunnable).get();
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while flushing wallet");
+        } catch (final ExecutionException x) {
+            throw new RuntimeException(x.getCause());
+        }
+    }
+
+    private final Runnable saveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Wallet wallet;
+            final int requests;
+            synchronized (WalletPersistence.this) {
+                scheduledSave = null;
+                if (!dirty || WalletPersistence.this.wallet == null)
+                    return;
+                wallet = WalletPersistence.this.wallet;
+                requests = requestCount;
+                dirty = false;
+                requestCount = 0;
+            }
+
+            final Stopwatch watch = Stopwatch.createStarted();
+            try {
+                wallet.saveToFile(walletFile);
+            } catch (final IOException x) {
+                log.error("problem saving wallet", x);
+                synchronized (WalletPersistence.this) {
+                    // retry with the next request
+                    dirty = true;
+                }
+                throw new RuntimeException(x);
+            }
+            watch.stop();
+
+            final long bytes = walletFile.length();
+            final long durationMs = watch.elapsed(TimeUnit.MILLISECONDS);
+            synchronized (WalletPersistence.this) {
+                saveCount++;
+                lastSaveBytes = bytes;
+                lastSaveDurationMs = durationMs;
+                totalSaveDurationMs += durationMs;
+            }
+            log.info("wallet saved to: '{}', {} bytes for {} requests, took {}", walletFile, bytes, requests, watch);
+            SyncMetrics.getInstance().recordPhase(SyncMetrics.Phase.WALLET_SAVE, durationMs);
+        }
+    };
+
+    public synchronized int getSaveCount() {
+        return saveCount;
+    }
+
+    public synchronized long getLastSaveBytes() {
+        return lastSaveBytes;
+    }
+
+    public synchronized long getLastSaveDurationMs() {
+        return lastSaveDurationMs;
+    }
+
+    public synchronized long getAverageSaveDurationMs() {
+        return saveCount > 0 ? totalSaveDurationMs / saveCount : 0;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.LruCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nullable;
+
+/**
+ * In-memory cache of the labels stored by {@link AddressBookProvider}. The address book is
+ * loaded in bulk on first use and kept up to date from the provider's change notifications,
+ * so that rendering lists of transactions does not issue one query per address.
+ */
+public class AddressBookLabelCache {
+
+    public interface OnLabelChangedListener {
+        /**
+         * @param address the address whose label changed, or null if any label might have changed
+         */
+        void onLabelChanged(@Nullable String address);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(AddressBookLabelCache.class);
+
+    private static final int MAX_ENTRIES = 2000;
+    // marks addresses known to have no label, so they are not queried again; compared by identity
+    private static final String NO_LABEL = "";
+
+    private static AddressBookLabelCache instance;
+
+    private final Context context;
+    private final Uri contentUri;
+    private final LruCache<String, String> labels = new LruCache<>(MAX_ENTRIES);
+    private final List<OnLabelChangedListener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private boolean loaded = false;
+    // true if the whole address book fits into the cache, so a miss means there is no label
+    private boolean complete = false;
+    private final Set<String> invalidated = new HashSet<>();
+
+    public static synchronized AddressBookLabelCache getInstance(final Context context) {
+        if (instance == null)
+            instance = new AddressBookLabelCache(context.getApplicationContext());
+        return instance;
+    }
+
+    private AddressBookLabelCache(final Context context) {
+        this.context = context;
+        this.contentUri = AddressBookProvider.contentUri(context.getPackageName());
+        context.getContentResolver().registerContentObserver(contentUri, true, contentObserver);
+    }
+
+    public void addOnLabelChangedListener(final OnLabelChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnLabelChangedListener(final OnLabelChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Nullable
+    public synchronized String resolveLabel(final String address) {
+        ensureLoaded();
+
+        final String label = labels.get(address);
+        if (label != null)
+            return label != NO_LABEL ? label : null;
+        if (complete && !invalidated.contains(address))
+            return null;
+
+        final String resolved = AddressBookProvider.resolveLabel(context, address);
+        labels.put(address, resolved != null ? resolved : NO_LABEL);
+        invalidated.remove(address);
+        return resolved;
+    }
+
+    /**
+     * Resolves the labels of many addresses, querying the provider at most once for all
+     * addresses that are not cached.
+     *
+     * @return labels keyed by address; addresses without a label are not contained
+     */
+    public synchronized Map<String, String> resolveLabels(final Collection<String> addresses) {
+        ensureLoaded();
+
+        final Map<String, String> result = new HashMap<>();
+        final Set<String> misses = new HashSet<>();
+        for (final String address : addresses) {
+            final String label = labels.get(address);
+            if (label != null) {
+                if (label != NO_LABEL)
+                    result.put(address, label);
+            } else if (!complete || invalidated.contains(address)) {
+                misses.add(address);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            final Map<String, String> queried = query(AddressBookProvider.SELECTION_IN, joinAddresses(misses));
+            for (final String address : misses) {
+                final String label = queried.get(address);
+                labels.put(address, label != null ? label : NO_LABEL);
+                invalidated.remove(address);
+                if (label != null)
+                    result.put(address, label);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads the address book in bulk. Can be called from a background thread ahead of time
+     * to keep the query off the main thread.
+     */
+    public synchronized void preload() {
+        ensureLoaded();
+    }
+
+    // must hold this
+    private void ensureLoaded() {
+        if (loaded)
+            return;
+
+        final Map<String, String> all = query(null, null);
+        labels.evictAll();
+        for (final Map.Entry<String, String> entry : all.entrySet())
+            labels.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : NO_LABEL);
+        complete = all.size() < MAX_ENTRIES;
+        invalidated.clear();
+        loaded = true;
+        log.info("loaded {} address book labels{}", all.size(), complete ? "" : ", partially cached");
+    }
+
+    private Map<String, String> query(@Nullable final String selection, @Nullable final String selectionArg) {
+        final Map<String, String> result = new HashMap<>();
+        final Cursor cursor = context.getContentResolver().query(contentUri, null, selection,
+                selectionArg != null ? new String[] { selectionArg } : null, null);
+        if (cursor != null) {
+            final int addressIndex = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_ADDRESS);
+            final int labelIndex = cursor.getColumnIndexOrThrow(AddressBookProvider.KEY_LABEL);
+            while (cursor.moveToNext())
+                result.put(cursor.getString(addressIndex), cursor.getString(labelIndex));
+            cursor.close();
+        }
+        return result;
+    }
+
+    private static String joinAddresses(final Collection<String> addresses) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String address : addresses) {
+            if (builder.length() > 0)
+                builder.append(',');
+            builder.append(address);
+        }
+        return builder.toString();
+    }
+
+    private synchronized void invalidate(@Nullable final String address) {
+        if (address != null) {
+            labels.remove(address);
+            invalidated.add(address);
+        } else {
+            loaded = false;
+        }
+    }
+
+    private final ContentObserver contentObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(final boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(final boolean selfChange, @Nullable final Uri uri) {
+            // the provider notifies content://<authority>/<address>[/<rowId>] for single entries
+            final List<String> pathSegments = uri != null ? uri.getPathSegments() : null;
+            final String address = pathSegments != null && !pathSegments.isEmpty() ? pathSegments.get(0) : null;
+
+            invalidate(address);
+            for (final OnLabelChangedListener listener : listeners)
+                listener.onLabelChanged(address);
+        }
+    };
+}
@@ -28,11 +28,14 @@ data class BlockchainState(var bestChainDate: Date?,
                            var impediments: Set<Impediment>,
                            var chainlockHeight: Int,
                            var mnlistHeight: Int,
-                           var percentageSync: Int) {
+                           var percentageSync: Int,
+                           var blocksPerSecond: Int,
+                           var bytesPerSecond: Long,
+                           var estimatedSecondsLeft: Long) {
 
     @JvmOverloads
     constructor(replaying: Boolean = false) : this(null, 0, replaying,
-            EnumSet.noneOf(Impediment::class.java), 0, 0, 0)
+            EnumSet.noneOf(Impediment::class.java), 0, 0, 0, 0, 0, -1)
 
     @PrimaryKey
     var id = 1
@@ -44,6 +47,23 @@ data class BlockchainState(var bestChainDate: Date?,
         STORAGE, NETWORK
     }
 
+    /**
+     * @return a copy that can be changed without affecting this state, including the impediments
+     */
+    fun snapshot(): BlockchainState {
+        val impedimentsCopy = EnumSet.noneOf(Impediment::class.java)
+        impedimentsCopy.addAll(impediments)
+        return copy(impediments = impedimentsCopy)
+    }
+
+    /**
+     * @return a copy without the download rates and the estimated time left, which are only
+     * meaningful while they are being measured
+     */
+    fun withoutRates(): BlockchainState {
+        return copy(blocksPerSecond = 0, bytesPerSecond = 0, estimatedSecondsLeft = -1)
+    }
+
     fun syncFailed(): Boolean {
         return impediments.contains(Impediment.NETWORK)
     }
@@ -52,4 +72,11 @@ data class BlockchainState(var bestChainDate: Date?,
         return !replaying && percentageSync == 100 && !syncFailed()
     }
 
+    /**
+     * The estimated time left is only known while blocks are being downloaded without impediments.
+     */
+    fun hasEstimatedTimeLeft(): Boolean {
+        return estimatedSecondsLeft >= 0 && impediments.isEmpty() && !isSynced()
+    }
+
 }
@@ -17,13 +17,14 @@
 
 package de.schildbach.wallet.data
 
-import androidx.lifecycle.LiveData
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
 
 /**
+ * Only used by [BlockchainStateRepository], which holds the current state in memory.
+ *
  * @author Samuel Barbosa
  */
 @Dao
@@ -32,16 +33,6 @@ abstract class BlockchainStateDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     abstract fun insert(blockchainState: BlockchainState)
 
-    fun save(blockchainState: BlockchainState) {
-        if (blockchainState.replaying && blockchainState.percentageSync == 100) {
-            blockchainState.replaying = false
-        }
-        insert(blockchainState)
-    }
-
-    @Query("SELECT * FROM blockchain_state LIMIT 1")
-    abstract fun load(): LiveData<BlockchainState?>
-
     @Query("SELECT * FROM blockchain_state LIMIT 1")
     abstract fun loadSync(): BlockchainState?
 
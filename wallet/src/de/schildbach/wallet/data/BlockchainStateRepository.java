@@ -0,0 +1,202 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.AppDatabase;
+
+/**
+ * Holds the authoritative {@link BlockchainState} in memory. Updates are applied on a single
+ * thread, published through {@link #getState()} and only written to the database on transitions
+ * that matter after a restart (impediments, replaying, sync done), or at most every
+ * {@link #PERSIST_INTERVAL_MS} while syncing.
+ *
+ * The download rates and the estimated time left are kept in memory only, so a restarted app
+ * does not show an estimate from a previous run.
+ */
+public class BlockchainStateRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockchainStateRepository.class);
+
+    private static final long PERSIST_INTERVAL_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+
+    private static BlockchainStateRepository instance;
+
+    private final BlockchainStateDao dao;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final MutableLiveData<BlockchainState> state = new MutableLiveData<>();
+
+    // only accessed on executor
+    private BlockchainState current;
+    private boolean dirty = false;
+    private long lastPersistedAt = 0;
+    @Nullable
+    private ScheduledFuture<?> scheduledPersist;
+
+    public static synchronized BlockchainStateRepository getInstance() {
+        if (instance == null) {
+            instance = new BlockchainStateRepository();
+        }
+        return instance;
+    }
+
+    private BlockchainStateRepository() {
+        dao = AppDatabase.getAppDatabase().blockchainStateDao();
+        // queued first, so every update sees the persisted state
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BlockchainState persisted = dao.loadSync();
+                current = persisted != null ? persisted.withoutRates() : new BlockchainState();
+                state.postValue(current);
+            }
+        });
+    }
+
+    /**
+     * Conflated: observers may skip intermediate states, but always end up with the latest one.
+     */
+    public LiveData<BlockchainState> getState() {
+        return state;
+    }
+
+    public void updateProgress(final Date bestChainDate, final int bestChainHeight, final int chainlockHeight,
+                               final int mnlistHeight, final int percentageSync, final int blocksPerSecond,
+                               final long bytesPerSecond, final long estimatedSecondsLeft) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BlockchainState next = current.snapshot();
+                next.setBestChainDate(bestChainDate);
+                next.setBestChainHeight(bestChainHeight);
+                next.setChainlockHeight(chainlockHeight);
+                next.setMnlistHeight(mnlistHeight);
+                next.setPercentageSync(percentageSync);
+                next.setBlocksPerSecond(blocksPerSecond);
+                next.setBytesPerSecond(bytesPerSecond);
+                next.setEstimatedSecondsLeft(estimatedSecondsLeft);
+                if (next.getReplaying() && percentageSync == 100) {
+                    next.setReplaying(false);
+                }
+                publish(next, percentageSync == 100 && current.getPercentageSync() != 100
+                        || next.getReplaying() != current.getReplaying());
+            }
+        });
+    }
+
+    public void updateImpediments(final Set<BlockchainState.Impediment> impediments) {
+        final Set<BlockchainState.Impediment> copy = EnumSet.noneOf(BlockchainState.Impediment.class);
+        copy.addAll(impediments);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BlockchainState next = current.snapshot();
+                next.setImpediments(copy);
+                publish(next, !copy.equals(current.getImpediments()));
+            }
+        });
+    }
+
+    /**
+     * Forgets the sync progress, e.g. before rescanning the blockchain.
+     */
+    public void reset(final boolean replaying) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                publish(new BlockchainState(replaying), true);
+            }
+        });
+    }
+
+    /**
+     * Writes the latest state to the database if it has not been written yet.
+     */
+    public void flush() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (dirty) {
+                    persist();
+                }
+            }
+        });
+    }
+
+    // must be called on executor
+    private void publish(final BlockchainState next, final boolean significant) {
+        if (next.equals(current) && !significant) {
+            return;
+        }
+        final boolean persistedChanged = !next.withoutRates().equals(current.withoutRates());
+        current = next;
+        state.postValue(next);
+        if (!persistedChanged && !significant) {
+            return;
+        }
+
+        dirty = true;
+        if (significant) {
+            persist();
+        } else if (scheduledPersist == null) {
+            final long delay = Math.max(lastPersistedAt + PERSIST_INTERVAL_MS - SystemClock.elapsedRealtime(), 0);
+            scheduledPersist = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    scheduledPersist = null;
+                    if (dirty) {
+                        persist();
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // must be called on executor
+    private void persist() {
+        if (scheduledPersist != null) {
+            scheduledPersist.cancel(false);
+            scheduledPersist = null;
+        }
+        try {
+            dao.insert(current.withoutRates());
+            dirty = false;
+            lastPersistedAt = SystemClock.elapsedRealtime();
+        } catch (final RuntimeException x) {
+            log.warn("problem persisting blockchain state", x);
+        }
+    }
+}
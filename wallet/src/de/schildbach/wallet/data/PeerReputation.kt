@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * What is known about a peer from previous connections, used to pick peers for the next
+ * connect and to drop peers that kept stalling the chain download.
+ */
+@Entity(tableName = "peer_reputation")
+data class PeerReputation(@PrimaryKey val host: String,
+                          val port: Int,
+                          val pingMs: Long,
+                          val bytesPerSec: Long,
+                          val connectCount: Int,
+                          val stallCount: Int,
+                          val lastSeen: Long) {
+
+    /**
+     * A peer is considered chronically slow if it stalled the download more often than it was
+     * connected without stalling.
+     */
+    fun isChronicallySlow(): Boolean {
+        return stallCount >= MIN_STALLS_TO_EVICT && stallCount * 2 > connectCount
+    }
+
+    companion object {
+        const val MIN_STALLS_TO_EVICT = 3
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+interface PeerReputationDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(peers: List<PeerReputation>)
+
+    @Query("SELECT * FROM peer_reputation")
+    fun loadAll(): List<PeerReputation>
+
+    /**
+     * Peers that were seen recently and did not stall, fastest first.
+     */
+    @Query("SELECT * FROM peer_reputation WHERE lastSeen > :since AND stallCount * 2 <= connectCount ORDER BY pingMs ASC, bytesPerSec DESC LIMIT :limit")
+    fun loadBest(since: Long, limit: Int): List<PeerReputation>
+
+    @Query("DELETE FROM peer_reputation WHERE lastSeen < :before")
+    fun prune(before: Long)
+}
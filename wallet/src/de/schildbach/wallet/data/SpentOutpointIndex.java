@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import com.google.common.base.Stopwatch;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.UTXO;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of all outpoints spent by any live transaction of a wallet, so that checking whether an
+ * outpoint is already spent does not need to scan every input of every transaction.
+ *
+ * The index is built lazily on the first query, which should therefore happen on a background
+ * thread, and is then kept up to date from wallet events. Dead transactions do not count, so an
+ * output whose only spender was double spent is still reported as unspent.
+ */
+public class SpentOutpointIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SpentOutpointIndex.class);
+
+    private final Wallet wallet;
+
+    // guarded by this
+    private final Set<OutPoint> spent = new HashSet<>();
+    private final Set<Sha256Hash> indexedTxIds = new HashSet<>();
+    private boolean built = false;
+
+    public SpentOutpointIndex(final Wallet wallet) {
+        this.wallet = wallet;
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    public void start() {
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, walletListener);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, walletListener);
+    }
+
+    public void stop() {
+        wallet.removeTransactionConfidenceEventListener(walletListener);
+        wallet.removeReorganizeEventListener(walletListener);
+        wallet.removeCoinsSentEventListener(walletListener);
+        wallet.removeCoinsReceivedEventListener(walletListener);
+    }
+
+    public synchronized boolean isSpent(final Sha256Hash hash, final long index) {
+        ensureBuilt();
+        return spent.contains(new OutPoint(hash, index));
+    }
+
+    public boolean isSpent(final TransactionOutPoint outpoint) {
+        return isSpent(outpoint.getHash(), outpoint.getIndex());
+    }
+
+    public boolean isSpent(final UTXO utxo) {
+        return isSpent(utxo.getHash(), utxo.getIndex());
+    }
+
+    /** forces the index to be rebuilt on the next query */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    // must hold this
+    private void ensureBuilt() {
+        // transactions are only removed by a reorganize or a wallet reset; like the transaction
+        // list, compare counts as a cheap check that nothing slipped through
+        if (built && indexedTxIds.size() == walletTransactionCount())
+            return;
+
+        final Stopwatch watch = Stopwatch.createStarted();
+        spent.clear();
+        indexedTxIds.clear();
+        for (final Transaction tx : wallet.getTransactions(false))
+            add(tx);
+        built = true;
+        watch.stop();
+        log.info("indexed {} spent outpoints of {} transactions, took {}", spent.size(), indexedTxIds.size(),
+                watch);
+    }
+
+    // must hold this
+    private void add(final Transaction tx) {
+        if (!indexedTxIds.add(tx.getTxId()))
+            return;
+        for (final TransactionInput input : tx.getInputs()) {
+            final TransactionOutPoint outpoint = input.getOutpoint();
+            spent.add(new OutPoint(outpoint.getHash(), outpoint.getIndex()));
+        }
+    }
+
+    private synchronized void onTransaction(final Transaction tx) {
+        if (!built)
+            return;
+        if (tx.getConfidence().getConfidenceType() == ConfidenceType.DEAD) {
+            // another transaction may spend the same outpoints, so start over rather than removing them
+            if (indexedTxIds.contains(tx.getTxId()))
+                built = false;
+        } else {
+            add(tx);
+        }
+    }
+
+    private int walletTransactionCount() {
+        return wallet.getPoolSize(Pool.UNSPENT) + wallet.getPoolSize(Pool.SPENT)
+                + wallet.getPoolSize(Pool.PENDING);
+    }
+
+    private static final class OutPoint {
+        private final Sha256Hash hash;
+        private final long index;
+
+        private OutPoint(final Sha256Hash hash, final long index) {
+            this.hash = hash;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof OutPoint))
+                return false;
+            final OutPoint other = (OutPoint) o;
+            return index == other.index && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hash.hashCode() + (int) index;
+        }
+    }
+
+    private final WalletListener walletListener = new WalletListener();
+
+    private class WalletListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+            WalletReorganizeEventListener, TransactionConfidenceEventListener {
+        @Override
+        public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                    final Coin newBalance) {
+            onTransaction(tx);
+        }
+
+        @Override
+        public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                final Coin newBalance) {
+            onTransaction(tx);
+        }
+
+        @Override
+        public void onReorganize(final Wallet wallet) {
+            invalidate();
+        }
+
+        @Override
+        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+            onTransaction(tx);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data
+
+import android.content.Context
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import org.bitcoinj.core.Coin
+
+/**
+ * Precomputed display data of a wallet transaction, so that the history does not have to
+ * walk the wallet to render a row.
+ */
+@Entity(tableName = "transaction_summary",
+        indices = [Index("time"), Index(value = ["internal", "sent", "time"])])
+data class TransactionSummary(@PrimaryKey val txId: String,
+                              val time: Long,
+                              val pending: Boolean,
+                              val value: Long,
+                              val fee: Long,
+                              val sent: Boolean,
+                              val self: Boolean,
+                              val internal: Boolean,
+                              val address: String?,
+                              val addressLabel: String?,
+                              val typeName: String) {
+
+    fun getValueCoin(): Coin {
+        return Coin.valueOf(value)
+    }
+
+    fun getFeeCoin(): Coin {
+        return Coin.valueOf(fee)
+    }
+
+    /**
+     * The type name is stored as the resource entry name, as resource ids are not stable
+     * between builds.
+     */
+    fun getTypeNameId(context: Context): Int {
+        return context.resources.getIdentifier(typeName, "string", context.packageName)
+    }
+}
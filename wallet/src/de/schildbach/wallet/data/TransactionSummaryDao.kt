@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+
+@Dao
+abstract class TransactionSummaryDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun insertAll(summaries: List<TransactionSummary>)
+
+    @Query("DELETE FROM transaction_summary WHERE txId IN (:txIds)")
+    abstract fun deleteAll(txIds: List<String>)
+
+    @Query("SELECT * FROM transaction_summary WHERE txId IN (:txIds)")
+    abstract fun loadSync(txIds: List<String>): List<TransactionSummary>
+
+    @Query("SELECT * FROM transaction_summary")
+    abstract fun loadAll(): List<TransactionSummary>
+
+    /**
+     * The most recent transactions, for showing the history before the wallet has been walked.
+     */
+    @Query("SELECT * FROM transaction_summary ORDER BY time DESC LIMIT :limit")
+    abstract fun loadLatest(limit: Int): List<TransactionSummary>
+
+    /**
+     * The most recent transactions of one direction, leaving out internal ones like the filter
+     * of the history does.
+     */
+    @Query("SELECT * FROM transaction_summary WHERE internal = 0 AND sent = :sent ORDER BY time DESC LIMIT :limit")
+    abstract fun loadLatest(sent: Boolean, limit: Int): List<TransactionSummary>
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import android.os.SystemClock;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
+import org.bitcoinj.wallet.listeners.WalletChangeEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.WalletBalanceWidgetProvider;
+
+/**
+ * Computes the balances of the current wallet once per wallet change, on a background thread,
+ * and shares them with every screen and the app widget. Changes are throttled to one computation
+ * per {@link #THROTTLE_MS}.
+ */
+public class WalletBalanceRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletBalanceRepository.class);
+
+    private static final long THROTTLE_MS = 500;
+
+    private static final BalanceType[] BALANCE_TYPES = {BalanceType.ESTIMATED, BalanceType.AVAILABLE,
+            BalanceType.ESTIMATED_SPENDABLE};
+
+    private static WalletBalanceRepository instance;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<BalanceType, MutableLiveData<Coin>> balances = new EnumMap<>(BalanceType.class);
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
+
+    @Nullable
+    private volatile Wallet wallet;
+    // replaced as a whole on executor, so readers on other threads see a consistent set
+    private volatile Map<BalanceType, Coin> computed = new EnumMap<>(BalanceType.class);
+    private volatile long lastUpdatedAt = 0;
+
+    public static synchronized WalletBalanceRepository getInstance() {
+        if (instance == null) {
+            instance = new WalletBalanceRepository();
+        }
+        return instance;
+    }
+
+    private WalletBalanceRepository() {
+        for (final BalanceType type : BALANCE_TYPES) {
+            balances.put(type, new MutableLiveData<Coin>());
+        }
+    }
+
+    /**
+     * Follows the given wallet from now on, or none if null. Called whenever the application
+     * loads or replaces its wallet.
+     */
+    public void setWallet(@Nullable final Wallet wallet) {
+        final Wallet previous = this.wallet;
+        if (previous == wallet) {
+            return;
+        }
+        if (previous != null) {
+            previous.removeChangeEventListener(walletListener);
+            previous.removeCoinsSentEventListener(walletListener);
+            previous.removeCoinsReceivedEventListener(walletListener);
+        }
+        this.wallet = wallet;
+        if (wallet != null) {
+            wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addCoinsSentEventListener(Threading.SAME_THREAD, walletListener);
+            wallet.addChangeEventListener(Threading.SAME_THREAD, walletListener);
+        }
+        scheduleUpdate();
+    }
+
+    /**
+     * @param type one of ESTIMATED, AVAILABLE or ESTIMATED_SPENDABLE
+     * @return the balance, which has no value until it was computed for the first time
+     */
+    public LiveData<Coin> getBalance(final BalanceType type) {
+        final LiveData<Coin> balance = balances.get(type);
+        if (balance == null) {
+            throw new IllegalArgumentException("balance type not cached: " + type);
+        }
+        return balance;
+    }
+
+    /**
+     * @return the last computed balance, or the balance computed on the calling thread if there is
+     *         none yet; zero if there is no wallet
+     */
+    public Coin getBalanceSync(final BalanceType type) {
+        final Coin balance = computed.get(type);
+        if (balance != null) {
+            return balance;
+        }
+        final Wallet wallet = this.wallet;
+        return wallet != null ? wallet.getBalance(type) : Coin.ZERO;
+    }
+
+    private void scheduleUpdate() {
+        if (!updatePending.compareAndSet(false, true)) {
+            return;
+        }
+        final long delay = Math.max(lastUpdatedAt + THROTTLE_MS - SystemClock.elapsedRealtime(), 0);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                // cleared first, so a change during this computation schedules another one
+                updatePending.set(false);
+                lastUpdatedAt = SystemClock.elapsedRealtime();
+                update();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // must be called on executor
+    private void update() {
+        final Wallet wallet = this.wallet;
+        if (wallet == null) {
+            return;
+        }
+        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+        final Map<BalanceType, Coin> previous = computed;
+        final Map<BalanceType, Coin> next = new EnumMap<>(BalanceType.class);
+        for (final BalanceType type : BALANCE_TYPES) {
+            next.put(type, wallet.getBalance(type));
+        }
+        computed = next;
+
+        boolean changed = false;
+        for (final BalanceType type : BALANCE_TYPES) {
+            if (!next.get(type).equals(previous.get(type))) {
+                balances.get(type).postValue(next.get(type));
+                changed = true;
+            }
+        }
+        if (changed) {
+            log.debug("wallet balance changed");
+            WalletBalanceWidgetProvider.updateWidgets(WalletApplication.getInstance());
+        }
+    }
+
+    private final WalletListener walletListener = new WalletListener();
+
+    private class WalletListener implements WalletChangeEventListener, WalletCoinsReceivedEventListener,
+            WalletCoinsSentEventListener {
+        @Override
+        public void onWalletChanged(final Wallet wallet) {
+            scheduleUpdate();
+        }
+
+        @Override
+        public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                    final Coin newBalance) {
+            scheduleUpdate();
+        }
+
+        @Override
+        public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                final Coin newBalance) {
+            scheduleUpdate();
+        }
+    }
+}
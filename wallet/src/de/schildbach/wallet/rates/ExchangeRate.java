@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
 import androidx.room.Entity;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
@@ -53,6 +54,23 @@ public class ExchangeRate {
         return Fiat.valueOf(currencyCode, val);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ExchangeRate other = (ExchangeRate) o;
+        return currencyCode.equals(other.currencyCode) && ObjectsCompat.equals(rate, other.rate);
+    }
+
+    @Override
+    public int hashCode() {
+        return ObjectsCompat.hash(currencyCode, rate);
+    }
+
     @Override
     public String toString() {
         return "{" + currencyCode + ":" + rate + "}";
@@ -17,6 +17,9 @@ public interface ExchangeRatesDao {
     @Query("SELECT * FROM exchange_rates ORDER BY currencyCode")
     LiveData<List<ExchangeRate>> getAll();
 
+    @Query("SELECT * FROM exchange_rates")
+    List<ExchangeRate> getAllSync();
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<ExchangeRate> exchangeRates);
 
@@ -1,17 +1,28 @@
 package de.schildbach.wallet.rates;
 
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import de.schildbach.wallet.AppDatabase;
 
@@ -25,93 +36,195 @@ public class ExchangeRatesRepository {
 
     private AppDatabase appDatabase;
     private Executor executor;
-    private Deque<ExchangeRatesClient> exchangeRatesClients = new ArrayDeque<>();
+    private ExecutorService clientExecutor;
+    private final List<ExchangeRatesClient> exchangeRatesClients = new ArrayList<>();
 
     private static final long UPDATE_FREQ_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long PROVIDER_DEADLINE_MS = TimeUnit.SECONDS.toMillis(15);
     private long lastUpdated;
+    // mirror of the persisted rates, written only from executor
+    private final Map<String, String> persistedRates = new ConcurrentHashMap<>();
+    private volatile boolean persistedRatesLoaded = false;
 
     public MutableLiveData<Boolean> isLoading = new MutableLiveData<>();
     public MutableLiveData<Boolean> hasError = new MutableLiveData<>();
 
-    private boolean isRefreshing = false;
+    private final AtomicBoolean isRefreshing = new AtomicBoolean(false);
 
     private ExchangeRatesRepository() {
         appDatabase = AppDatabase.getAppDatabase();
         executor = Executors.newSingleThreadExecutor();
+        // a hanging client must not hold up the next refresh, so threads are not capped
+        clientExecutor = Executors.newCachedThreadPool();
 
-        populateExchangeRatesStack();
+        populateExchangeRatesClients();
     }
 
-    public static ExchangeRatesRepository getInstance() {
+    public static synchronized ExchangeRatesRepository getInstance() {
         if (instance == null) {
             instance = new ExchangeRatesRepository();
         }
         return instance;
     }
 
-    private void populateExchangeRatesStack() {
-        if (!exchangeRatesClients.isEmpty()) {
-            exchangeRatesClients.clear();
-        }
-
-        exchangeRatesClients.push(DashRatesSecondFallback.getInstance());
+    private void populateExchangeRatesClients() {
+        exchangeRatesClients.add(DashRetailClient.getInstance());
         //These sources do not return valid data (TODO: Remove these or replace these?)
-        //exchangeRatesClients.push(DashRatesFirstFallback.getInstance());
-        //exchangeRatesClients.push(DashRatesClient.getInstance());
-        exchangeRatesClients.push(DashRetailClient.getInstance());
+        //exchangeRatesClients.add(DashRatesClient.getInstance());
+        //exchangeRatesClients.add(DashRatesFirstFallback.getInstance());
+        exchangeRatesClients.add(DashRatesSecondFallback.getInstance());
     }
 
+    /**
+     * Queries all clients at the same time and stores the rates of the most preferred one that
+     * answers with a non-empty result before the deadline. The persisted rates keep being served
+     * until then.
+     */
     private void refreshRates() {
-        this.refreshRates(false);
-    }
-
-    private void refreshRates(boolean forceRefresh) {
-        if (!shouldRefresh()) {
-            return;
-        }
-        if (exchangeRatesClients.isEmpty()) {
-            populateExchangeRatesStack();
-        }
-        if (!forceRefresh && isRefreshing) {
+        if (!shouldRefresh() || !isRefreshing.compareAndSet(false, true)) {
             return;
         }
-        isRefreshing = true;
-        final ExchangeRatesClient exchangeRatesClient = exchangeRatesClients.pop();
         isLoading.postValue(true);
         executor.execute(new Runnable() {
             @Override
             public void run() {
-                List<ExchangeRate> rates;
                 try {
-                    rates = exchangeRatesClient.getRates();
-                    if (rates != null && !rates.isEmpty()) {
-                        appDatabase.exchangeRatesDao().insertAll(rates);
+                    final List<ExchangeRate> rates = fetchPreferredRates();
+                    if (rates != null) {
+                        persistChangedRates(rates);
                         lastUpdated = System.currentTimeMillis();
-                        populateExchangeRatesStack();
                         hasError.postValue(false);
-                        isRefreshing = false;
-                        log.info("exchange rates updated successfully with {}", exchangeRatesClient);
-                    } else if (!exchangeRatesClients.isEmpty()) {
-                        refreshRates(true);
-                    } else {
-                        handleRefreshError();
-                    }
-                } catch (Exception e) {
-                    log.error("failed to fetch exchange rates with {}", exchangeRatesClient, e);
-                    if (!exchangeRatesClients.isEmpty()) {
-                        refreshRates(true);
                     } else {
                         handleRefreshError();
                     }
                 } finally {
+                    isRefreshing.set(false);
                     isLoading.postValue(false);
                 }
             }
         });
     }
 
+    /**
+     * A fallback is only used if every client before it failed or did not answer in time, but it
+     * is queried right away, so it has the whole deadline to answer as well.
+     */
+    @Nullable
+    private List<ExchangeRate> fetchPreferredRates() {
+        final List<Future<List<ExchangeRate>>> futures = new ArrayList<>(exchangeRatesClients.size());
+        for (final ExchangeRatesClient client : exchangeRatesClients) {
+            futures.add(clientExecutor.submit(new Callable<List<ExchangeRate>>() {
+                @Override
+                public List<ExchangeRate> call() {
+                    return fetchRates(client);
+                }
+            }));
+        }
+
+        final long deadline = SystemClock.elapsedRealtime() + PROVIDER_DEADLINE_MS;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                final ExchangeRatesClient client = exchangeRatesClients.get(i);
+                final long remaining = Math.max(deadline - SystemClock.elapsedRealtime(), 0);
+                try {
+                    final List<ExchangeRate> rates = futures.get(i).get(remaining, TimeUnit.MILLISECONDS);
+                    if (rates != null) {
+                        log.info("exchange rates updated successfully with {}", client);
+                        return rates;
+                    }
+                } catch (TimeoutException e) {
+                    log.info("{} did not answer within {} ms", client, PROVIDER_DEADLINE_MS);
+                } catch (ExecutionException e) {
+                    log.error("failed to fetch exchange rates with {}", client, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<List<ExchangeRate>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes only the rates that differ from what was persisted before. Rates rarely all move
+     * within one refresh interval, and every write wakes all observers of the table. Currencies
+     * a client returned without a rate are skipped, so their previous rate is kept.
+     */
+    private void persistChangedRates(List<ExchangeRate> rates) {
+        loadPersistedRates();
+
+        final List<ExchangeRate> changed = new ArrayList<>();
+        int missing = 0;
+        for (ExchangeRate rate : rates) {
+            if (rate.getRate() == null) {
+                missing++;
+            } else if (!rate.getRate().equals(persistedRates.get(rate.getCurrencyCode()))) {
+                changed.add(rate);
+            }
+        }
+        if (missing > 0) {
+            log.info("skipped {} exchange rates without a rate", missing);
+        }
+
+        if (!changed.isEmpty()) {
+            // insertAll runs in a single transaction
+            appDatabase.exchangeRatesDao().insertAll(changed);
+            for (ExchangeRate rate : changed) {
+                persistedRates.put(rate.getCurrencyCode(), rate.getRate());
+            }
+        }
+        log.info("{} of {} exchange rates changed", changed.size(), rates.size());
+    }
+
+    private synchronized void loadPersistedRates() {
+        if (!persistedRatesLoaded) {
+            for (ExchangeRate rate : appDatabase.exchangeRatesDao().getAllSync()) {
+                // rows written before null rates were skipped may lack a rate
+                if (rate.getRate() != null) {
+                    persistedRates.put(rate.getCurrencyCode(), rate.getRate());
+                }
+            }
+            persistedRatesLoaded = true;
+        }
+    }
+
+    /**
+     * Looks up the current rate without querying the database, except for the very first
+     * lookup. Meant for hot paths like tagging received transactions.
+     */
+    @Nullable
+    public ExchangeRate getRateSync(String currencyCode) {
+        if (!persistedRatesLoaded) {
+            loadPersistedRates();
+        }
+        final String rate = persistedRates.get(currencyCode);
+        return rate != null ? new ExchangeRate(currencyCode, rate) : null;
+    }
+
+    @Nullable
+    private List<ExchangeRate> fetchRates(ExchangeRatesClient client) {
+        final long start = SystemClock.elapsedRealtime();
+        try {
+            final List<ExchangeRate> rates = client.getRates();
+            if (rates != null && !rates.isEmpty()) {
+                log.info("{} answered in {} ms", client, SystemClock.elapsedRealtime() - start);
+                return rates;
+            }
+            log.info("no exchange rates returned by {}", client);
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // cancelled because a preferred client answered or the deadline passed
+                return null;
+            }
+            log.error("failed to fetch exchange rates with {}", client, e);
+        }
+        return null;
+    }
+
     private void handleRefreshError() {
-        isRefreshing = false;
         if (appDatabase.exchangeRatesDao().count() == 0) {
             hasError.postValue(true);
         }
@@ -133,12 +246,11 @@ public class ExchangeRatesRepository {
         if (shouldRefresh()) {
             refreshRates();
         }
-        return appDatabase.exchangeRatesDao().getRate(currencyCode);
+        // the query is re-run whenever any rate is written, only pass on changes of this one
+        return Transformations.distinctUntilChanged(appDatabase.exchangeRatesDao().getRate(currencyCode));
     }
 
     public LiveData<List<ExchangeRate>> searchRates(String query) {
         return appDatabase.exchangeRatesDao().searchRates(query);
     }
-
-
 }
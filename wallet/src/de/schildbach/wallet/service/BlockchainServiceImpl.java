@@ -38,6 +38,7 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 import android.text.format.DateUtils;
 
 import androidx.core.app.NotificationCompat;
@@ -94,6 +95,7 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -104,13 +106,13 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
-import de.schildbach.wallet.data.AddressBookProvider;
+import de.schildbach.wallet.data.AddressBookLabelCache;
 import de.schildbach.wallet.data.BlockchainState;
-import de.schildbach.wallet.data.BlockchainStateDao;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.rates.ExchangeRatesRepository;
 import de.schildbach.wallet.ui.OnboardingActivity;
 import de.schildbach.wallet.util.BlockchainStateUtils;
 import de.schildbach.wallet.util.CrashReporter;
@@ -140,6 +142,8 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
     private WakeLock wakeLock;
 
     private PeerConnectivityListener peerConnectivityListener;
+    private TransactionSummaryUpdater transactionSummaryUpdater;
+    private PeerReputationTracker peerReputationTracker;
     private NotificationManager nm;
     private ConnectivityManager connectivityManager;
     private final Set<BlockchainState.Impediment> impediments = EnumSet.noneOf(BlockchainState.Impediment.class);
@@ -148,6 +152,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
     private final List<Address> notificationAddresses = new LinkedList<Address>();
     private AtomicInteger transactionsReceived = new AtomicInteger();
     private long serviceCreatedAt;
+    private long peerGroupStartedAt;
     private boolean resetBlockchainOnShutdown = false;
     private boolean deleteWalletFileOnShutdown = false;
 
@@ -155,7 +160,6 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
     private final SeedPeers seedPeerDiscovery = new SeedPeers(Constants.NETWORK_PARAMETERS);
     private final DnsDiscovery dnsDiscovery = new DnsDiscovery(Constants.DNS_SEED, Constants.NETWORK_PARAMETERS);
     ArrayList<PeerDiscovery> peerDiscoveryList = new ArrayList<>(2);
-    private final static int MINIMUM_PEER_COUNT = 16;
 
     private static final int MIN_COLLECT_HISTORY = 2;
     private static final int IDLE_BLOCK_TIMEOUT_MIN = 2;
@@ -171,6 +175,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
 
     private Executor executor = Executors.newSingleThreadExecutor();
     private int syncPercentage = 0; // 0 to 100%
+    private final SyncRateEstimator syncRateEstimator = new SyncRateEstimator();
 
     private final ThrottlingWalletChangeListener walletEventListener = new ThrottlingWalletChangeListener(
             APPWIDGET_THROTTLE_MS) {
@@ -192,12 +197,12 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
 
             if (tx.getExchangeRate() == null && ((!replaying || insideTxExchangeRateTimeThreshold) || tx.getConfidence().getConfidenceType() == ConfidenceType.PENDING)) {
                 try {
-                    final de.schildbach.wallet.rates.ExchangeRate exchangeRate = AppDatabase.getAppDatabase()
-                            .exchangeRatesDao().getRateSync(config.getExchangeCurrencyCode());
+                    final de.schildbach.wallet.rates.ExchangeRate exchangeRate = ExchangeRatesRepository.getInstance()
+                            .getRateSync(config.getExchangeCurrencyCode());
                     if (exchangeRate != null) {
                         log.info("Setting exchange rate on received transaction.  Rate:  " + exchangeRate.toString() + " tx: " + tx.getHashAsString());
                         tx.setExchangeRate(new ExchangeRate(Coin.COIN, exchangeRate.getFiat()));
-                        application.saveWallet();
+                        application.saveWalletLater();
                     }
                 } catch (Exception e) {
                     log.error("Failed to get exchange rate", e);
@@ -260,13 +265,17 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         final String msg = getString(R.string.notification_coins_received_msg,
                 btcFormat.format(notificationAccumulatedAmount)) + msgSuffix;
 
+        final List<String> addressStrs = new ArrayList<String>(notificationAddresses.size());
+        for (final Address notificationAddress : notificationAddresses)
+            addressStrs.add(notificationAddress.toString());
+        final Map<String, String> labels = AddressBookLabelCache.getInstance(this).resolveLabels(addressStrs);
+
         final StringBuilder text = new StringBuilder();
-        for (final Address notificationAddress : notificationAddresses) {
+        for (final String addressStr : addressStrs) {
             if (text.length() > 0)
                 text.append(", ");
 
-            final String addressStr = notificationAddress.toString();
-            final String label = AddressBookProvider.resolveLabel(getApplicationContext(), addressStr);
+            final String label = labels.get(addressStr);
             text.append(label != null ? label : addressStr);
         }
 
@@ -311,6 +320,8 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         public void onPeerDisconnected(final Peer peer, final int peerCount) {
             this.peerCount = peerCount;
             changed(peerCount);
+            if (syncRateEstimator.onPeerDisconnected(peer))
+                updateBlockchainState();
         }
 
         @Override
@@ -356,6 +367,9 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         public void onBlocksDownloaded(final Peer peer, final Block block, final FilteredBlock filteredBlock,
                 final int blocksLeft) {
             super.onBlocksDownloaded(peer, block, filteredBlock, blocksLeft);
+            final int size = filteredBlock != null ? filteredBlock.getMessageSize() : block.getMessageSize();
+            SyncMetrics.getInstance().recordBlockDownloaded(size);
+            syncRateEstimator.onBlockDownloaded(peer, size, blocksLeft);
             delayHandler.removeCallbacksAndMessages(null);
 
             final long now = System.currentTimeMillis();
@@ -404,6 +418,9 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         protected void doneDownload() {
             super.doneDownload();
             syncPercentage = 100;
+            syncRateEstimator.reset();
+            SyncMetrics.getInstance().recordPhase(SyncMetrics.Phase.BLOCKCHAIN_DOWNLOAD,
+                    SystemClock.elapsedRealtime() - peerGroupStartedAt);
         }
     };
 
@@ -480,6 +497,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
                 peerGroup.setUserAgent(Constants.USER_AGENT, application.packageInfo().versionName);
                 peerGroup.addConnectedEventListener(peerConnectivityListener);
                 peerGroup.addDisconnectedEventListener(peerConnectivityListener);
+                peerReputationTracker.attach(peerGroup);
 
                 final int maxConnectedPeers = application.maxConnectedPeers();
 
@@ -496,7 +514,8 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
                     //private final PeerDiscovery normalPeerDiscovery = MultiplexingDiscovery
                     //        .forServices(Constants.NETWORK_PARAMETERS, 0);
                     private final PeerDiscovery normalPeerDiscovery = new MultiplexingDiscovery(Constants.NETWORK_PARAMETERS, peerDiscoveryList);
-
+                    private final RankedPeerDiscovery rankedPeerDiscovery = new RankedPeerDiscovery(
+                            peerReputationTracker, createPeerDiscoverySources(normalPeerDiscovery));
 
                     @Override
                     public InetSocketAddress[] getPeers(final long services, final long timeoutValue,
@@ -518,37 +537,13 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
                         }
 
                         if (!connectTrustedPeerOnly) {
-                            // First use the masternode list that is included
+                            // masternode list, seed peers and DNS are queried at the same time,
+                            // reachable peers are returned first, those that served us well before
+                            // ahead of the others
                             try {
-                                SimplifiedMasternodeList mnlist = org.bitcoinj.core.Context.get().masternodeListManager.getListAtChainTip();
-                                MasternodePeerDiscovery discovery = new MasternodePeerDiscovery(mnlist);
-                                peers.addAll(Arrays.asList(discovery.getPeers(services, timeoutValue, timeoutUnit)));
+                                peers.addAll(Arrays.asList(rankedPeerDiscovery.getPeers(services, timeoutValue, timeoutUnit)));
                             } catch (PeerDiscoveryException x) {
-                                //swallow and continue with another method of connection
-                                log.info("DMN List peer discovery failed: "+ x.getMessage());
-                            }
-
-                            if(peers.size() < MINIMUM_PEER_COUNT) {
-                                if (Constants.NETWORK_PARAMETERS.getAddrSeeds() != null) {
-                                    log.info("DNM peer discovery returned less than 16 nodes.  Adding seed peers to the list to increase connections");
-                                    peers.addAll(Arrays.asList(seedPeerDiscovery.getPeers(services, timeoutValue, timeoutUnit)));
-                                } else {
-                                    log.info("DNS peer discovery returned less than 16 nodes.  Unable to add seed peers (it is not specified for this network).");
-                                }
-                            }
-
-                            if(peers.size() < MINIMUM_PEER_COUNT) {
-                                log.info("Masternode peer discovery returned less than 16 nodes.  Adding DMN peers to the list to increase connections");
-
-                                try {
-                                    peers.addAll(
-                                            Arrays.asList(normalPeerDiscovery.getPeers(services, timeoutValue, timeoutUnit)));
-                                } catch (PeerDiscoveryException x) {
-                                    //swallow and continue with another method of connection, if one exists.
-                                    log.info("DNS peer discovery failed: "+ x.getMessage());
-                                    if(x.getCause() != null)
-                                        log.info(  "cause:  " + x.getCause().getMessage());
-                                }
+                                log.info("peer discovery failed: " + x.getMessage());
                             }
                         }
 
@@ -562,15 +557,17 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
 
                     @Override
                     public void shutdown() {
-                        normalPeerDiscovery.shutdown();
+                        rankedPeerDiscovery.shutdown();
                     }
                 });
 
                 // start peergroup
+                peerGroupStartedAt = SystemClock.elapsedRealtime();
                 peerGroup.startAsync();
                 peerGroup.startBlockChainDownload(blockchainDownloadListener);
             } else if (!impediments.isEmpty() && peerGroup != null) {
                 log.info("stopping peergroup");
+                peerReputationTracker.detach(peerGroup);
                 peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
                 peerGroup.removeConnectedEventListener(peerConnectivityListener);
                 peerGroup.removeWallet(wallet);
@@ -583,6 +580,31 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         }
     };
 
+    private List<PeerDiscovery> createPeerDiscoverySources(final PeerDiscovery dnsPeerDiscovery) {
+        final List<PeerDiscovery> sources = new ArrayList<>(3);
+        // the masternode list changes over time, so it is read on every query
+        sources.add(new PeerDiscovery() {
+            @Override
+            public InetSocketAddress[] getPeers(final long services, final long timeoutValue,
+                    final TimeUnit timeoutUnit) throws PeerDiscoveryException {
+                org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+                SimplifiedMasternodeList mnlist = org.bitcoinj.core.Context.get().masternodeListManager.getListAtChainTip();
+                return new MasternodePeerDiscovery(mnlist).getPeers(services, timeoutValue, timeoutUnit);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        });
+        if (Constants.NETWORK_PARAMETERS.getAddrSeeds() != null) {
+            sources.add(seedPeerDiscovery);
+        } else {
+            log.info("seed peers are not specified for this network");
+        }
+        sources.add(dnsPeerDiscovery);
+        return sources;
+    }
+
     private final static class ActivityHistoryEntry {
         public final int numTransactionsReceived;
         public final int numBlocksDownloaded;
@@ -604,6 +626,10 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
 
         @Override
         public void onReceive(final Context context, final Intent intent) {
+            // a stalled download delivers no blocks that would update the estimate
+            if (syncRateEstimator.resetIfStalled())
+                updateBlockchainState();
+
             final int chainHeight = blockChain.getBestChainHeight();
 
             if (lastChainHeight > 0) {
@@ -685,6 +711,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         super.onCreate();
 
         application = (WalletApplication) getApplication();
+        application.awaitNotificationChannels();
 
         nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -701,6 +728,9 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         config = application.getConfiguration();
         final Wallet wallet = application.getWallet();
 
+        final SyncMetrics syncMetrics = SyncMetrics.getInstance();
+        syncMetrics.startSession();
+
         peerConnectivityListener = new PeerConnectivityListener();
 
         broadcastPeerState(0);
@@ -729,8 +759,10 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         }
 
         try {
+            final Stopwatch blockStoreWatch = Stopwatch.createStarted();
             blockStore = new SPVBlockStore(Constants.NETWORK_PARAMETERS, blockChainFile);
             blockStore.getChainHead(); // detect corruptions as early as possible
+            syncMetrics.recordPhase(SyncMetrics.Phase.BLOCK_STORE_OPEN, blockStoreWatch.elapsed(TimeUnit.MILLISECONDS));
 
             final long earliestKeyCreationTime = wallet.getEarliestKeyCreationTime();
 
@@ -742,6 +774,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
                             earliestKeyCreationTime);
                     watch.stop();
                     log.info("checkpoints loaded from '{}', took {}", Constants.Files.CHECKPOINTS_FILENAME, watch);
+                    syncMetrics.recordPhase(SyncMetrics.Phase.CHECKPOINT_IMPORT, watch.elapsed(TimeUnit.MILLISECONDS));
                 } catch (final IOException x) {
                     log.error("problem reading checkpoints, continuing without", x);
                 }
@@ -774,13 +807,21 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         application.getWallet().addCoinsSentEventListener(Threading.SAME_THREAD, walletEventListener);
         application.getWallet().addChangeEventListener(Threading.SAME_THREAD, walletEventListener);
 
+        transactionSummaryUpdater = new TransactionSummaryUpdater(this, wallet);
+        transactionSummaryUpdater.start();
+
+        peerReputationTracker = new PeerReputationTracker();
+        peerReputationTracker.start();
+
         registerReceiver(tickReceiver, new IntentFilter(Intent.ACTION_TIME_TICK));
 
+        final Stopwatch initDashSyncWatch = Stopwatch.createStarted();
         wallet.getContext().initDashSync(getDir("masternode", MODE_PRIVATE).getAbsolutePath());
+        syncMetrics.recordPhase(SyncMetrics.Phase.DASH_SYNC_INIT, initDashSyncWatch.elapsed(TimeUnit.MILLISECONDS));
 
         peerDiscoveryList.add(dnsDiscovery);
         updateAppWidget();
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(this, new Observer<BlockchainState>() {
+        BlockchainStateRepository.getInstance().getState().observe(this, new Observer<BlockchainState>() {
             @Override
             public void onChanged(BlockchainState blockchainState) {
                 handleBlockchainStateNotification(blockchainState);
@@ -866,9 +907,15 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
         application.getWallet().removeCoinsSentEventListener(walletEventListener);
         application.getWallet().removeCoinsReceivedEventListener(walletEventListener);
 
+        transactionSummaryUpdater.stop();
+        BlockchainStateRepository.getInstance().flush();
+
         unregisterReceiver(connectivityReceiver);
 
+        SyncMetrics.getInstance().finishSession();
+
         if (peerGroup != null) {
+            peerReputationTracker.detach(peerGroup);
             peerGroup.removeDisconnectedEventListener(peerConnectivityListener);
             peerGroup.removeConnectedEventListener(peerConnectivityListener);
             peerGroup.removeWallet(application.getWallet());
@@ -958,43 +1005,28 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
     }
 
     private void updateBlockchainStateImpediments() {
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                BlockchainStateDao dao = AppDatabase.getAppDatabase().blockchainStateDao();
-                BlockchainState blockchainState = dao.loadSync();
-                if (blockchainState != null) {
-                    blockchainState.getImpediments().clear();
-                    blockchainState.getImpediments().addAll(impediments);
-                    dao.save(blockchainState);
-                }
-            }
-        });
+        if (!impediments.isEmpty())
+            syncRateEstimator.reset();
+        BlockchainStateRepository.getInstance().updateImpediments(impediments);
     }
 
     private void updateBlockchainState() {
         executor.execute(new Runnable() {
             @Override
             public void run() {
-                BlockchainStateDao blockchainStateDao = AppDatabase.getAppDatabase().blockchainStateDao();
-                BlockchainState blockchainState = blockchainStateDao.loadSync();
-                if (blockchainState == null) {
-                    blockchainState = new BlockchainState();
-                }
-
                 StoredBlock chainHead = blockChain.getChainHead();
                 StoredBlock block = application.getWallet().getContext().chainLockHandler.getBestChainLockBlock();
                 int chainLockHeight = block != null ? block.getHeight() : 0;
                 int mnListHeight = (int) application.getWallet().getContext().masternodeListManager.getListAtChainTip().getHeight();
 
-                blockchainState.setBestChainDate(chainHead.getHeader().getTime());
-                blockchainState.setBestChainHeight(chainHead.getHeight());
-                blockchainState.setImpediments(EnumSet.copyOf(impediments));
-                blockchainState.setChainlockHeight(chainLockHeight);
-                blockchainState.setMnlistHeight(mnListHeight);
-                blockchainState.setPercentageSync(percentageSync());
+                SyncMetrics.getInstance().recordSyncProgress(percentageSync(),
+                        chainHead.getHeight() - mnListHeight, chainHead.getHeight() - chainLockHeight);
 
-                AppDatabase.getAppDatabase().blockchainStateDao().save(blockchainState);
+                // the repository keeps the state in memory and decides when to write it to the database
+                BlockchainStateRepository.getInstance().updateProgress(chainHead.getHeader().getTime(),
+                        chainHead.getHeight(), chainLockHeight, mnListHeight, percentageSync(),
+                        syncRateEstimator.getBlocksPerSecond(), syncRateEstimator.getBytesPerSecond(),
+                        syncRateEstimator.getEstimatedSecondsLeft());
             }
         });
     }
@@ -1064,7 +1096,7 @@ public class BlockchainServiceImpl extends LifecycleService implements Blockchai
     }
 
     private void updateAppWidget() {
-        WalletBalanceWidgetProvider.updateWidgets(BlockchainServiceImpl.this, application.getWallet());
+        WalletBalanceWidgetProvider.updateWidgets(BlockchainServiceImpl.this);
     }
 
     public void forceForeground() {
@@ -70,6 +70,7 @@ public final class InactivityNotificationService extends Service {
 
         nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         application = (WalletApplication) getApplication();
+        application.awaitNotificationChannels();
         config = application.getConfiguration();
         wallet = application.getWallet();
     }
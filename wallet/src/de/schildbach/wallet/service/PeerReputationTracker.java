@@ -0,0 +1,287 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import android.os.SystemClock;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.FilteredBlock;
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.listeners.BlocksDownloadedEventListener;
+import org.bitcoinj.core.listeners.PeerConnectedEventListener;
+import org.bitcoinj.core.listeners.PeerDisconnectedEventListener;
+import org.bitcoinj.utils.Threading;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.AppDatabase;
+import de.schildbach.wallet.data.PeerReputation;
+import de.schildbach.wallet.data.PeerReputationDao;
+
+/**
+ * Remembers how peers behaved across {@link PeerGroup}s: ping, download throughput, how often
+ * they stalled the chain download and when they were last seen. Well behaving peers are offered
+ * to the next peer discovery.
+ *
+ * A download peer that delivers no block for a while during the chain download is disconnected,
+ * and so are peers that stall chronically when they connect while syncing. Evicted peers are
+ * left out of peer discovery for some time.
+ */
+public class PeerReputationTracker implements PeerConnectedEventListener, PeerDisconnectedEventListener,
+        BlocksDownloadedEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerReputationTracker.class);
+
+    private static final long FORGET_AFTER_MS = TimeUnit.DAYS.toMillis(30);
+    private static final long RECENTLY_SEEN_MS = TimeUnit.DAYS.toMillis(7);
+    private static final int MAX_KNOWN_PEERS = 16;
+    // never evict a chronically slow peer if that leaves us with fewer connections than this
+    private static final int MIN_PEERS_TO_EVICT = 3;
+    private static final long STALL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long STALL_CHECK_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long EVICTED_FOR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final PeerReputationDao dao;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    // guarded by this
+    private final Map<String, PeerReputation> reputations = new HashMap<>();
+    private final Map<Peer, Session> sessions = new HashMap<>();
+    // hosts and when they were evicted, in elapsed realtime
+    private final Map<String, Long> evicted = new HashMap<>();
+    private int blocksLeft = 0;
+    @Nullable
+    private Peer downloadPeer;
+    @Nullable
+    private ScheduledFuture<?> stallCheck;
+
+    private static final class Session {
+        private final long connectedAt = SystemClock.elapsedRealtime();
+        private long bytesDownloaded = 0;
+        private boolean downloading = false;
+        private long lastBlockAt = 0;
+        private boolean stalled = false;
+    }
+
+    public PeerReputationTracker() {
+        this.dao = AppDatabase.getAppDatabase().peerReputationDao();
+    }
+
+    public void start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dao.prune(System.currentTimeMillis() - FORGET_AFTER_MS);
+                final List<PeerReputation> all = dao.loadAll();
+                synchronized (PeerReputationTracker.this) {
+                    for (final PeerReputation reputation : all)
+                        reputations.put(reputation.getHost(), reputation);
+                }
+                log.info("loaded reputation of {} peers", all.size());
+            }
+        });
+    }
+
+    public void attach(final PeerGroup peerGroup) {
+        peerGroup.addConnectedEventListener(Threading.SAME_THREAD, this);
+        peerGroup.addDisconnectedEventListener(Threading.SAME_THREAD, this);
+        peerGroup.addBlocksDownloadedEventListener(Threading.SAME_THREAD, this);
+        synchronized (this) {
+            if (stallCheck == null)
+                stallCheck = executor.scheduleWithFixedDelay(stallCheckRunnable, STALL_CHECK_MS, STALL_CHECK_MS,
+                        TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops tracking the peers of the given group and records their sessions, without counting
+     * the upcoming disconnects as stalls.
+     */
+    public void detach(final PeerGroup peerGroup) {
+        peerGroup.removeBlocksDownloadedEventListener(this);
+        peerGroup.removeDisconnectedEventListener(this);
+        peerGroup.removeConnectedEventListener(this);
+
+        final List<PeerReputation> changed = new ArrayList<>();
+        synchronized (this) {
+            if (stallCheck != null) {
+                stallCheck.cancel(false);
+                stallCheck = null;
+            }
+            for (final Map.Entry<Peer, Session> entry : sessions.entrySet())
+                changed.add(record(entry.getKey(), entry.getValue(), entry.getValue().stalled));
+            sessions.clear();
+            downloadPeer = null;
+        }
+        persist(changed);
+    }
+
+    /**
+     * @return true if the peer was disconnected for stalling recently and should not be dialed
+     */
+    public synchronized boolean isEvicted(final InetSocketAddress address) {
+        final String host = address.getAddress() != null ? address.getAddress().getHostAddress()
+                : address.getHostString();
+        final Long evictedAt = evicted.get(host);
+        if (evictedAt == null)
+            return false;
+        if (SystemClock.elapsedRealtime() - evictedAt < EVICTED_FOR_MS)
+            return true;
+        evicted.remove(host);
+        return false;
+    }
+
+    @Override
+    public void onPeerConnected(final Peer peer, final int peerCount) {
+        final PeerReputation reputation;
+        final boolean syncing;
+        synchronized (this) {
+            sessions.put(peer, new Session());
+            reputation = reputations.get(hostOf(peer.getAddress()));
+            syncing = blocksLeft > 0;
+        }
+
+        if (syncing && reputation != null && reputation.isChronicallySlow() && peerCount > MIN_PEERS_TO_EVICT) {
+            log.info("disconnecting {}, stalled {} of {} times", peer, reputation.getStallCount(),
+                    reputation.getConnectCount());
+            evict(peer);
+        }
+    }
+
+    @Override
+    public void onPeerDisconnected(final Peer peer, final int peerCount) {
+        final PeerReputation reputation;
+        synchronized (this) {
+            final Session session = sessions.remove(peer);
+            if (session == null)
+                return;
+            if (peer == downloadPeer)
+                downloadPeer = null;
+            // losing the download peer in the middle of the chain download is what hurts
+            reputation = record(peer, session, session.stalled || (session.downloading && blocksLeft > 0));
+        }
+        persist(Collections.singletonList(reputation));
+    }
+
+    @Override
+    public void onBlocksDownloaded(final Peer peer, final Block block, @Nullable final FilteredBlock filteredBlock,
+            final int blocksLeft) {
+        synchronized (this) {
+            this.blocksLeft = blocksLeft;
+            downloadPeer = peer;
+            final Session session = sessions.get(peer);
+            if (session != null) {
+                session.downloading = true;
+                session.lastBlockAt = SystemClock.elapsedRealtime();
+                session.bytesDownloaded += filteredBlock != null ? filteredBlock.getMessageSize()
+                        : block.getMessageSize();
+            }
+        }
+    }
+
+    /**
+     * Loads the peers that behaved best recently, best first. Queries the database, so do not
+     * call this on the main thread.
+     */
+    public List<InetSocketAddress> loadBestPeers() {
+        final List<PeerReputation> best = dao.loadBest(System.currentTimeMillis() - RECENTLY_SEEN_MS,
+                MAX_KNOWN_PEERS);
+        final List<InetSocketAddress> peers = new ArrayList<>(best.size());
+        for (final PeerReputation reputation : best)
+            peers.add(new InetSocketAddress(reputation.getHost(), reputation.getPort()));
+        return peers;
+    }
+
+    private final Runnable stallCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Peer stalledPeer;
+            final int stalledBlocksLeft;
+            synchronized (PeerReputationTracker.this) {
+                final Session session = downloadPeer != null ? sessions.get(downloadPeer) : null;
+                if (blocksLeft <= 0 || session == null || session.stalled
+                        || SystemClock.elapsedRealtime() - session.lastBlockAt < STALL_TIMEOUT_MS)
+                    return;
+                session.stalled = true;
+                stalledPeer = downloadPeer;
+                stalledBlocksLeft = blocksLeft;
+            }
+            log.info("disconnecting {}, no block for {} s with {} blocks left", stalledPeer,
+                    TimeUnit.MILLISECONDS.toSeconds(STALL_TIMEOUT_MS), stalledBlocksLeft);
+            evict(stalledPeer);
+        }
+    };
+
+    private void evict(final Peer peer) {
+        synchronized (this) {
+            evicted.put(hostOf(peer.getAddress()), SystemClock.elapsedRealtime());
+        }
+        peer.close();
+    }
+
+    // must hold this
+    private PeerReputation record(final Peer peer, final Session session, final boolean stalled) {
+        final PeerAddress address = peer.getAddress();
+        final String host = hostOf(address);
+        final PeerReputation previous = reputations.get(host);
+
+        final long durationMs = Math.max(SystemClock.elapsedRealtime() - session.connectedAt, 1);
+        final long bytesPerSec = session.downloading ? session.bytesDownloaded * 1000 / durationMs
+                : previous != null ? previous.getBytesPerSec() : 0;
+        final long pingTime = peer.getPingTime();
+        final long pingMs = pingTime != Long.MAX_VALUE ? pingTime
+                : previous != null ? previous.getPingMs() : Long.MAX_VALUE;
+
+        final PeerReputation reputation = new PeerReputation(host, address.getPort(), pingMs, bytesPerSec,
+                (previous != null ? previous.getConnectCount() : 0) + 1,
+                (previous != null ? previous.getStallCount() : 0) + (stalled ? 1 : 0),
+                System.currentTimeMillis());
+        reputations.put(host, reputation);
+        return reputation;
+    }
+
+    private void persist(final List<PeerReputation> changed) {
+        if (changed.isEmpty())
+            return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dao.insertAll(changed);
+            }
+        });
+    }
+
+    private static String hostOf(final PeerAddress address) {
+        return address.getAddr() != null ? address.getAddr().getHostAddress() : address.getHostname();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import android.os.SystemClock;
+
+import com.google.common.base.Stopwatch;
+
+import org.bitcoinj.net.discovery.PeerDiscovery;
+import org.bitcoinj.net.discovery.PeerDiscoveryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries several {@link PeerDiscovery} sources at the same time and returns every peer they
+ * discovered. The peers that behaved well before and a sample of the others are probed with a
+ * TCP connect: the peers that answered come first, fastest first and the well behaving ones
+ * ahead of the others, followed by the unprobed peers and finally the peers that did not answer.
+ * Peers recently evicted for stalling are left out.
+ */
+public class RankedPeerDiscovery implements PeerDiscovery {
+
+    private static final Logger log = LoggerFactory.getLogger(RankedPeerDiscovery.class);
+
+    private static final int MAX_PROBES = 32;
+    private static final int PROBE_TIMEOUT_MS = 2000;
+
+    private final PeerReputationTracker reputation;
+    private final List<PeerDiscovery> sources;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    public RankedPeerDiscovery(final PeerReputationTracker reputation, final List<PeerDiscovery> sources) {
+        this.reputation = reputation;
+        this.sources = sources;
+    }
+
+    @Override
+    public InetSocketAddress[] getPeers(final long services, final long timeoutValue, final TimeUnit timeoutUnit)
+            throws PeerDiscoveryException {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final Set<InetSocketAddress> known = new LinkedHashSet<>(reputation.loadBestPeers());
+        final Set<InetSocketAddress> discovered = new LinkedHashSet<>(known);
+        discovered.addAll(discover(services, timeoutValue, timeoutUnit));
+        final List<InetSocketAddress> candidates = withoutEvicted(discovered);
+        if (candidates.isEmpty())
+            throw new PeerDiscoveryException("no peers discovered by any of " + (sources.size() + 1) + " sources");
+
+        // the peers that behaved well are always probed, the others are sampled
+        final List<InetSocketAddress> probed = new ArrayList<>();
+        final List<InetSocketAddress> others = new ArrayList<>();
+        for (final InetSocketAddress candidate : candidates)
+            (known.contains(candidate) ? probed : others).add(candidate);
+        Collections.shuffle(others);
+        probed.addAll(others.subList(0, Math.min(others.size(), MAX_PROBES)));
+
+        final List<InetSocketAddress> answered = probe(probed);
+        watch.stop();
+        log.info("discovered {} peers, {} known, {} of {} probed answered, took {}", candidates.size(),
+                known.size(), answered.size(), probed.size(), watch);
+        SyncMetrics.getInstance().recordPhase(SyncMetrics.Phase.PEER_DISCOVERY, watch.elapsed(TimeUnit.MILLISECONDS));
+
+        // every discovered peer is kept, so the peer group has enough to fall back on
+        final Set<InetSocketAddress> ranked = new LinkedHashSet<>();
+        for (final InetSocketAddress peer : answered)
+            if (known.contains(peer))
+                ranked.add(peer);
+        ranked.addAll(answered);
+        final Set<InetSocketAddress> probedSet = new HashSet<>(probed);
+        for (final InetSocketAddress candidate : candidates)
+            if (!probedSet.contains(candidate))
+                ranked.add(candidate);
+        ranked.addAll(probed);
+        return ranked.toArray(new InetSocketAddress[0]);
+    }
+
+    /**
+     * @return the peers that were not evicted recently, or all of them if that would leave none
+     */
+    private List<InetSocketAddress> withoutEvicted(final Collection<InetSocketAddress> peers) {
+        final List<InetSocketAddress> result = new ArrayList<>(peers.size());
+        for (final InetSocketAddress peer : peers)
+            if (!reputation.isEvicted(peer))
+                result.add(peer);
+        if (result.size() < peers.size())
+            log.info("leaving out {} evicted peers", peers.size() - result.size());
+        return !result.isEmpty() ? result : new ArrayList<>(peers);
+    }
+
+    private List<InetSocketAddress> discover(final long services, final long timeoutValue,
+            final TimeUnit timeoutUnit) {
+        final CompletionService<InetSocketAddress[]> completionService = new ExecutorCompletionService<>(executor);
+        final List<Future<InetSocketAddress[]>> futures = new ArrayList<>(sources.size());
+        for (final PeerDiscovery source : sources) {
+            futures.add(completionService.submit(new Callable<InetSocketAddress[]>() {
+                @Override
+                public InetSocketAddress[] call() throws PeerDiscoveryException {
+                    return source.getPeers(services, timeoutValue, timeoutUnit);
+                }
+            }));
+        }
+
+        // deduplicate, keeping the order in which sources answered
+        final Set<InetSocketAddress> peers = new LinkedHashSet<>();
+        final long deadline = SystemClock.elapsedRealtime() + timeoutUnit.toMillis(timeoutValue);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                final long remaining = deadline - SystemClock.elapsedRealtime();
+                final Future<InetSocketAddress[]> future = remaining > 0
+                        ? completionService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (future == null) {
+                    log.info("peer discovery deadline reached, {} of {} sources answered", i, futures.size());
+                    break;
+                }
+                try {
+                    peers.addAll(Arrays.asList(future.get()));
+                } catch (final ExecutionException x) {
+                    log.info("peer discovery failed: {}", x.getCause().getMessage());
+                }
+            }
+        } catch (final InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Future<InetSocketAddress[]> future : futures)
+                future.cancel(true);
+        }
+        return new ArrayList<>(peers);
+    }
+
+    /**
+     * @return the peers that accepted a connection, ordered by connect time
+     */
+    private List<InetSocketAddress> probe(final List<InetSocketAddress> probed) {
+        final List<Future<Long>> futures = new ArrayList<>(probed.size());
+        for (final InetSocketAddress peer : probed) {
+            futures.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    final long start = SystemClock.elapsedRealtime();
+                    final Socket socket = new Socket();
+                    try {
+                        socket.connect(peer, PROBE_TIMEOUT_MS);
+                        return SystemClock.elapsedRealtime() - start;
+                    } finally {
+                        socket.close();
+                    }
+                }
+            }));
+        }
+
+        final Map<InetSocketAddress, Long> rtts = new HashMap<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                // every probe times out on its own, so this waits at most PROBE_TIMEOUT_MS overall
+                rtts.put(probed.get(i), futures.get(i).get());
+            } catch (final ExecutionException x) {
+                // unreachable
+            } catch (final InterruptedException x) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        final List<InetSocketAddress> ranked = new ArrayList<>(rtts.keySet());
+        Collections.sort(ranked, new Comparator<InetSocketAddress>() {
+            @Override
+            public int compare(final InetSocketAddress peer1, final InetSocketAddress peer2) {
+                return Long.compare(rtts.get(peer1), rtts.get(peer2));
+            }
+        });
+        if (!ranked.isEmpty())
+            log.info("fastest peer {} answered in {} ms", ranked.get(0), rtts.get(ranked.get(0)));
+        return ranked;
+    }
+
+    @Override
+    public void shutdown() {
+        for (final PeerDiscovery source : sources)
+            source.shutdown();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import de.schildbach.wallet.WalletApplication;
+
+/**
+ * Timings of the phases that make up a blockchain sync, collected per service session. The
+ * most recent sessions are kept in a small file so they can be attached to bug reports.
+ */
+public class SyncMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(SyncMetrics.class);
+
+    private static final String FILENAME = "sync-metrics.json";
+    private static final int MAX_SESSIONS = 10;
+
+    public enum Phase {
+        WALLET_LOAD, BLOCK_STORE_OPEN, CHECKPOINT_IMPORT, DASH_SYNC_INIT, PEER_DISCOVERY, BLOCKCHAIN_DOWNLOAD,
+        WALLET_SAVE
+    }
+
+    private static final class PhaseStats {
+        int count;
+        long totalMs;
+        long maxMs;
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject().put("count", count).put("totalMs", totalMs).put("maxMs", maxMs);
+        }
+
+        static PhaseStats fromJson(final JSONObject json) {
+            final PhaseStats stats = new PhaseStats();
+            stats.count = json.optInt("count");
+            stats.totalMs = json.optLong("totalMs");
+            stats.maxMs = json.optLong("maxMs");
+            return stats;
+        }
+    }
+
+    private static final class Session {
+        final long startedAt;
+        long durationMs;
+        final Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+        int blocksDownloaded;
+        long bytesDownloaded;
+        long downloadMs;
+        int syncPercentage;
+        long masternodeListLag = -1;
+        long chainLockLag = -1;
+
+        Session(final long startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        JSONObject toJson() throws JSONException {
+            final JSONObject phasesJson = new JSONObject();
+            for (final Map.Entry<Phase, PhaseStats> entry : phases.entrySet())
+                phasesJson.put(entry.getKey().name(), entry.getValue().toJson());
+            return new JSONObject().put("startedAt", startedAt).put("durationMs", durationMs)
+                    .put("phases", phasesJson).put("blocksDownloaded", blocksDownloaded)
+                    .put("bytesDownloaded", bytesDownloaded).put("downloadMs", downloadMs)
+                    .put("syncPercentage", syncPercentage).put("masternodeListLag", masternodeListLag)
+                    .put("chainLockLag", chainLockLag);
+        }
+
+        static Session fromJson(final JSONObject json) throws JSONException {
+            final Session session = new Session(json.getLong("startedAt"));
+            session.durationMs = json.optLong("durationMs");
+            final JSONObject phasesJson = json.optJSONObject("phases");
+            if (phasesJson != null) {
+                for (final Phase phase : Phase.values()) {
+                    final JSONObject phaseJson = phasesJson.optJSONObject(phase.name());
+                    if (phaseJson != null)
+                        session.phases.put(phase, PhaseStats.fromJson(phaseJson));
+                }
+            }
+            session.blocksDownloaded = json.optInt("blocksDownloaded");
+            session.bytesDownloaded = json.optLong("bytesDownloaded");
+            session.downloadMs = json.optLong("downloadMs");
+            session.syncPercentage = json.optInt("syncPercentage");
+            session.masternodeListLag = json.optLong("masternodeListLag", -1);
+            session.chainLockLag = json.optLong("chainLockLag", -1);
+            return session;
+        }
+
+        void appendTo(final StringBuilder report) {
+            report.append(String.format(Locale.US, "session %tF %<tT, %d s\n", new Date(startedAt),
+                    durationMs / DateUtils.SECOND_IN_MILLIS));
+            for (final Map.Entry<Phase, PhaseStats> entry : phases.entrySet()) {
+                final PhaseStats stats = entry.getValue();
+                report.append(String.format(Locale.US, "  %-20s %4dx total %6d ms, max %6d ms\n",
+                        entry.getKey().name().toLowerCase(Locale.US), stats.count, stats.totalMs, stats.maxMs));
+            }
+            final long seconds = Math.max(downloadMs / DateUtils.SECOND_IN_MILLIS, 1);
+            report.append(String.format(Locale.US, "  downloaded %d blocks, %d bytes, %d blocks/s, %d bytes/s\n",
+                    blocksDownloaded, bytesDownloaded, blocksDownloaded / seconds, bytesDownloaded / seconds));
+            report.append(String.format(Locale.US, "  sync %d%%, masternode list lag %d, chainlock lag %d\n",
+                    syncPercentage, masternodeListLag, chainLockLag));
+        }
+    }
+
+    private static SyncMetrics instance;
+
+    private final File file;
+    private final Executor executor = Executors.newSingleThreadExecutor();
+
+    // guarded by this
+    private Session current;
+    private long currentStartedAtRealtime;
+    private long firstBlockAtRealtime;
+    private final LinkedList<Session> recent = new LinkedList<>();
+
+    public static synchronized SyncMetrics getInstance() {
+        if (instance == null)
+            instance = new SyncMetrics(new File(WalletApplication.getInstance().getFilesDir(), FILENAME));
+        return instance;
+    }
+
+    private SyncMetrics(final File file) {
+        this.file = file;
+        startSession();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Starts a new session, unless the current one has not downloaded any blocks yet. This way
+     * the phases leading up to the first sync, like loading the wallet, end up in its session.
+     */
+    public synchronized void startSession() {
+        if (current != null && current.blocksDownloaded == 0)
+            return;
+        if (current != null)
+            finishSession();
+        else
+            resetCurrent();
+    }
+
+    // must hold this
+    private void resetCurrent() {
+        current = new Session(System.currentTimeMillis());
+        currentStartedAtRealtime = SystemClock.elapsedRealtime();
+        firstBlockAtRealtime = 0;
+    }
+
+    public synchronized void finishSession() {
+        current.durationMs = SystemClock.elapsedRealtime() - currentStartedAtRealtime;
+        recent.addFirst(current);
+        while (recent.size() > MAX_SESSIONS)
+            recent.removeLast();
+        resetCurrent();
+        save();
+    }
+
+    public synchronized void recordPhase(final Phase phase, final long durationMs) {
+        PhaseStats stats = current.phases.get(phase);
+        if (stats == null) {
+            stats = new PhaseStats();
+            current.phases.put(phase, stats);
+        }
+        stats.count++;
+        stats.totalMs += durationMs;
+        stats.maxMs = Math.max(stats.maxMs, durationMs);
+    }
+
+    public synchronized void recordBlockDownloaded(final long bytes) {
+        final long now = SystemClock.elapsedRealtime();
+        if (firstBlockAtRealtime == 0)
+            firstBlockAtRealtime = now;
+        current.blocksDownloaded++;
+        current.bytesDownloaded += bytes;
+        current.downloadMs = now - firstBlockAtRealtime;
+    }
+
+    public synchronized void recordSyncProgress(final int syncPercentage, final long masternodeListLag,
+            final long chainLockLag) {
+        current.syncPercentage = syncPercentage;
+        current.masternodeListLag = masternodeListLag;
+        current.chainLockLag = chainLockLag;
+    }
+
+    /**
+     * @return a human readable report of the current and the recent sessions
+     */
+    public synchronized String getReport() {
+        final StringBuilder report = new StringBuilder();
+        current.durationMs = SystemClock.elapsedRealtime() - currentStartedAtRealtime;
+        current.appendTo(report);
+        for (final Session session : recent)
+            session.appendTo(report);
+        return report.toString();
+    }
+
+    // must hold this
+    private void save() {
+        final JSONArray json = new JSONArray();
+        try {
+            for (final Session session : recent)
+                json.put(session.toJson());
+        } catch (final JSONException x) {
+            log.warn("problem serializing sync metrics", x);
+            return;
+        }
+        final String content = json.toString();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Files.asCharSink(file, Charsets.UTF_8).write(content);
+                } catch (final IOException x) {
+                    log.warn("problem writing sync metrics", x);
+                }
+            }
+        });
+    }
+
+    private void load() {
+        if (!file.exists())
+            return;
+        final List<Session> loaded = new ArrayList<>();
+        try {
+            final JSONArray json = new JSONArray(Files.asCharSource(file, Charsets.UTF_8).read());
+            for (int i = 0; i < json.length(); i++)
+                loaded.add(Session.fromJson(json.getJSONObject(i)));
+        } catch (final IOException | JSONException x) {
+            log.warn("problem reading sync metrics, starting over", x);
+            return;
+        }
+        synchronized (this) {
+            // sessions finished before loading completed are newer
+            for (final Session session : loaded)
+                if (recent.size() < MAX_SESSIONS)
+                    recent.addLast(session);
+        }
+    }
+}
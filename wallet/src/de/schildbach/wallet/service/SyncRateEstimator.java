@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import android.os.SystemClock;
+
+import org.bitcoinj.core.Peer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Smoothed download rate of the chain sync. Blocks are counted as they arrive and folded into
+ * an exponentially weighted moving average once per sample, so a single slow or fast second
+ * does not make the estimated time left jump around.
+ *
+ * The rate starts over when another peer takes over the download, when the download peer goes
+ * away and when no block arrived for a while.
+ */
+public class SyncRateEstimator {
+
+    private static final double ALPHA = 0.2;
+    private static final long MIN_SAMPLE_MS = 1000;
+    private static final long STALL_TIMEOUT_MS = 30 * 1000;
+
+    // guarded by this
+    @Nullable
+    private Peer downloadPeer;
+    private long lastBlockAt = 0;
+    private long sampleStartedAt = 0;
+    private int sampleBlocks = 0;
+    private long sampleBytes = 0;
+    private double blocksPerSecond = 0;
+    private double bytesPerSecond = 0;
+    private int blocksLeft = 0;
+
+    public synchronized void onBlockDownloaded(final Peer peer, final long bytes, final int blocksLeft) {
+        if (peer != downloadPeer) {
+            reset();
+            downloadPeer = peer;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        lastBlockAt = now;
+        if (sampleStartedAt == 0)
+            sampleStartedAt = now;
+        sampleBlocks++;
+        sampleBytes += bytes;
+        this.blocksLeft = blocksLeft;
+
+        final long elapsed = now - sampleStartedAt;
+        if (elapsed >= MIN_SAMPLE_MS) {
+            final double blocksRate = sampleBlocks * 1000.0 / elapsed;
+            final double bytesRate = sampleBytes * 1000.0 / elapsed;
+            final boolean first = blocksPerSecond == 0;
+            blocksPerSecond = first ? blocksRate : ALPHA * blocksRate + (1 - ALPHA) * blocksPerSecond;
+            bytesPerSecond = first ? bytesRate : ALPHA * bytesRate + (1 - ALPHA) * bytesPerSecond;
+            sampleStartedAt = now;
+            sampleBlocks = 0;
+            sampleBytes = 0;
+        }
+    }
+
+    /**
+     * Forgets the current rate if the given peer was downloading the chain.
+     *
+     * @return true if the rate was forgotten
+     */
+    public synchronized boolean onPeerDisconnected(final Peer peer) {
+        if (peer != downloadPeer)
+            return false;
+        reset();
+        return true;
+    }
+
+    /**
+     * Forgets the current rate if no block arrived for a while.
+     *
+     * @return true if the rate was forgotten
+     */
+    public synchronized boolean resetIfStalled() {
+        if (lastBlockAt == 0 || SystemClock.elapsedRealtime() - lastBlockAt < STALL_TIMEOUT_MS)
+            return false;
+        reset();
+        return true;
+    }
+
+    /**
+     * Forgets the current rate, e.g. because of an impediment or because the download is done.
+     */
+    public synchronized void reset() {
+        downloadPeer = null;
+        lastBlockAt = 0;
+        sampleStartedAt = 0;
+        sampleBlocks = 0;
+        sampleBytes = 0;
+        blocksPerSecond = 0;
+        bytesPerSecond = 0;
+        blocksLeft = 0;
+    }
+
+    public synchronized int getBlocksPerSecond() {
+        return (int) Math.round(blocksPerSecond);
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return Math.round(bytesPerSecond);
+    }
+
+    /**
+     * @return the estimated number of seconds until the download is done, or -1 if unknown
+     */
+    public synchronized long getEstimatedSecondsLeft() {
+        if (blocksPerSecond == 0)
+            return -1;
+        return Math.round(blocksLeft / blocksPerSecond);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.service;
+
+import android.content.Context;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Transaction.Purpose;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.AppDatabase;
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.data.AddressBookLabelCache;
+import de.schildbach.wallet.data.TransactionSummary;
+import de.schildbach.wallet.data.TransactionSummaryDao;
+import de.schildbach.wallet.util.TransactionUtil;
+import de.schildbach.wallet.util.WalletUtils;
+
+/**
+ * Keeps the {@code transaction_summary} table in sync with the wallet. Changed transactions
+ * are collected on the wallet thread and written in batches on a background thread.
+ */
+public class TransactionSummaryUpdater implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+        WalletReorganizeEventListener, TransactionConfidenceEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionSummaryUpdater.class);
+
+    // stays well below the limit of bind arguments per SQLite statement
+    private static final int MAX_QUERY_ARGS = 500;
+
+    private final Context context;
+    private final Wallet wallet;
+    private final TransactionSummaryDao dao;
+    private final AddressBookLabelCache labelCache;
+    private final Executor executor = Executors.newSingleThreadExecutor();
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private Set<Sha256Hash> pendingChanges = new HashSet<>();
+    private boolean resyncPending = false;
+    private boolean flushScheduled = false;
+
+    // guarded by lock; used to refresh only the rows affected by a label change
+    private final Map<String, Set<Sha256Hash>> txIdsByAddress = new HashMap<>();
+
+    public TransactionSummaryUpdater(final Context context, final Wallet wallet) {
+        this.context = context.getApplicationContext();
+        this.wallet = wallet;
+        this.dao = AppDatabase.getAppDatabase().transactionSummaryDao();
+        this.labelCache = AddressBookLabelCache.getInstance(context);
+    }
+
+    public void start() {
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, this);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, this);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, this);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, this);
+        labelCache.addOnLabelChangedListener(labelChangedListener);
+
+        // the wallet might have changed while the service was not running
+        requestResync();
+    }
+
+    public void stop() {
+        labelCache.removeOnLabelChangedListener(labelChangedListener);
+        wallet.removeTransactionConfidenceEventListener(this);
+        wallet.removeReorganizeEventListener(this);
+        wallet.removeCoinsSentEventListener(this);
+        wallet.removeCoinsReceivedEventListener(this);
+    }
+
+    public void requestResync() {
+        synchronized (lock) {
+            resyncPending = true;
+            pendingChanges.clear();
+            scheduleFlush();
+        }
+    }
+
+    private void markChanged(final Transaction tx) {
+        synchronized (lock) {
+            if (!resyncPending)
+                pendingChanges.add(tx.getTxId());
+            scheduleFlush();
+        }
+    }
+
+    private void markChanged(final String address) {
+        synchronized (lock) {
+            final Set<Sha256Hash> txIds = txIdsByAddress.get(address);
+            if (txIds == null || txIds.isEmpty())
+                return;
+            if (!resyncPending)
+                pendingChanges.addAll(txIds);
+            scheduleFlush();
+        }
+    }
+
+    // must hold lock
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.execute(flush);
+        }
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            final Set<Sha256Hash> changes;
+            final boolean resync;
+            synchronized (lock) {
+                changes = pendingChanges;
+                resync = resyncPending;
+                pendingChanges = new HashSet<>();
+                resyncPending = false;
+                flushScheduled = false;
+            }
+
+            org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+            try {
+                if (resync)
+                    resync();
+                else if (!changes.isEmpty())
+                    update(changes);
+            } catch (final RuntimeException x) {
+                log.error("failed to update transaction summaries", x);
+            }
+        }
+    };
+
+    /**
+     * Compares every transaction of the wallet with the table and only writes the rows that differ,
+     * so resyncing on every service start is cheap when the table is already up to date.
+     */
+    private void resync() {
+        final Stopwatch watch = Stopwatch.createStarted();
+        final Map<String, TransactionSummary> stored = new HashMap<>();
+        for (final TransactionSummary summary : dao.loadAll())
+            stored.put(summary.getTxId(), summary);
+
+        synchronized (lock) {
+            txIdsByAddress.clear();
+        }
+        final List<TransactionSummary> changed = new ArrayList<>();
+        for (final Transaction tx : wallet.getTransactions(true)) {
+            final TransactionSummary summary = summarize(tx);
+            if (!summary.equals(stored.remove(summary.getTxId())))
+                changed.add(summary);
+        }
+
+        write(changed, new ArrayList<>(stored.keySet()));
+        watch.stop();
+        log.info("resynced transaction summaries, {} written, {} removed, took {}", changed.size(),
+                stored.size(), watch);
+    }
+
+    private void update(final Set<Sha256Hash> changes) {
+        final List<String> txIds = new ArrayList<>(changes.size());
+        for (final Sha256Hash txId : changes)
+            txIds.add(txId.toString());
+        final Map<String, TransactionSummary> stored = new HashMap<>();
+        for (final List<String> chunk : Lists.partition(txIds, MAX_QUERY_ARGS))
+            for (final TransactionSummary summary : dao.loadSync(chunk))
+                stored.put(summary.getTxId(), summary);
+
+        final List<TransactionSummary> changed = new ArrayList<>(changes.size());
+        final List<String> removed = new ArrayList<>();
+        for (final Sha256Hash txId : changes) {
+            final Transaction tx = wallet.getTransaction(txId);
+            final TransactionSummary storedSummary = stored.get(txId.toString());
+            if (tx == null) {
+                if (storedSummary != null)
+                    removed.add(txId.toString());
+                continue;
+            }
+
+            final TransactionSummary summary = summarize(tx);
+            if (!summary.equals(storedSummary))
+                changed.add(summary);
+        }
+
+        write(changed, removed);
+    }
+
+    private void write(final List<TransactionSummary> changed, final List<String> removed) {
+        if (!changed.isEmpty())
+            dao.insertAll(changed);
+        for (final List<String> chunk : Lists.partition(removed, MAX_QUERY_ARGS))
+            dao.deleteAll(chunk);
+    }
+
+    private TransactionSummary summarize(final Transaction tx) {
+        final Coin value = tx.getValue(wallet);
+        final boolean sent = value.signum() < 0;
+        final Coin fee = tx.getFee();
+        final Address address;
+        if (sent) {
+            final List<Address> addresses = WalletUtils.getToAddressOfSent(tx, wallet);
+            address = addresses.isEmpty() ? null : addresses.get(0);
+        } else {
+            address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
+        }
+        final String addressStr = address != null ? address.toBase58() : null;
+        final String addressLabel;
+        if (addressStr != null) {
+            addressLabel = labelCache.resolveLabel(addressStr);
+            synchronized (lock) {
+                Set<Sha256Hash> txIds = txIdsByAddress.get(addressStr);
+                if (txIds == null) {
+                    txIds = new HashSet<>();
+                    txIdsByAddress.put(addressStr, txIds);
+                }
+                txIds.add(tx.getTxId());
+            }
+        } else {
+            addressLabel = null;
+        }
+
+        final Date updateTime = tx.getUpdateTime();
+        final String typeName = context.getResources()
+                .getResourceEntryName(TransactionUtil.getTransactionTypeName(tx, wallet));
+
+        return new TransactionSummary(tx.getTxId().toString(),
+                updateTime != null ? updateTime.getTime() : 0,
+                tx.getConfidence().getConfidenceType() == ConfidenceType.PENDING,
+                value.value, fee != null ? fee.value : 0, sent, WalletUtils.isEntirelySelf(tx, wallet),
+                tx.getPurpose() == Purpose.KEY_ROTATION, addressStr, addressLabel, typeName);
+    }
+
+    private final AddressBookLabelCache.OnLabelChangedListener labelChangedListener =
+            new AddressBookLabelCache.OnLabelChangedListener() {
+        @Override
+        public void onLabelChanged(@Nullable final String address) {
+            if (address != null)
+                markChanged(address);
+            else
+                requestResync();
+        }
+    };
+
+    @Override
+    public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                final Coin newBalance) {
+        markChanged(tx);
+    }
+
+    @Override
+    public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                            final Coin newBalance) {
+        markChanged(tx);
+    }
+
+    @Override
+    public void onReorganize(final Wallet wallet) {
+        requestResync();
+    }
+
+    @Override
+    public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+        markChanged(tx);
+    }
+}
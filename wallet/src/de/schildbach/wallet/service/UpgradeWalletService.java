@@ -62,6 +62,7 @@ public final class UpgradeWalletService extends IntentService {
         super.onCreate();
 
         application = (WalletApplication) getApplication();
+        application.awaitNotificationChannels();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             final NotificationCompat.Builder notification = new NotificationCompat.Builder(this,
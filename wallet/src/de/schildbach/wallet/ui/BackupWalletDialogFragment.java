@@ -19,12 +19,12 @@ package de.schildbach.wallet.ui;
 
 import static com.google.common.base.Preconditions.checkState;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.security.GeneralSecurityException;
 import java.text.DateFormat;
 import java.util.Date;
@@ -286,17 +286,17 @@ public class BackupWalletDialogFragment extends DialogFragment {
 
         final Protos.Wallet walletProto = new WalletProtobufSerializer().walletToProto(wallet);
 
-        Writer cipherOut = null;
+        OutputStream plainOut = null;
 
         try {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            walletProto.writeTo(baos);
-            baos.close();
-            final byte[] plainBytes = baos.toByteArray();
-
-            cipherOut = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8);
-            cipherOut.write(Crypto.encrypt(plainBytes, password.toCharArray()));
-            cipherOut.flush();
+            // encrypted and encoded while being written, so the serialized wallet is never held in memory
+            plainOut = Crypto.encryptStream(
+                    new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8)),
+                    password.toCharArray());
+            walletProto.writeTo(plainOut);
+            // writes the final block
+            plainOut.close();
+            plainOut = null;
 
             log.info("backed up wallet to: '" + file + "'");
 
@@ -304,9 +304,9 @@ public class BackupWalletDialogFragment extends DialogFragment {
         } catch (final IOException x) {
             handleError(x);
         } finally {
-            if (cipherOut != null) {
+            if (plainOut != null) {
                 try {
-                    cipherOut.close();
+                    plainOut.close();
                 } catch (final IOException x) {
                     // swallow
                 }
@@ -35,7 +35,7 @@ import org.bitcoinj.wallet.Wallet;
 import org.dash.wallet.common.ui.CurrencyTextView;
 
 import de.schildbach.wallet.Constants;
-import de.schildbach.wallet.data.AddressBookProvider;
+import de.schildbach.wallet.data.AddressBookLabelCache;
 import de.schildbach.wallet.data.BlockInfo;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
@@ -262,7 +262,7 @@ public class BlockListAdapter extends RecyclerView.Adapter<BlockListAdapter.Bloc
         else if (isInternal || self)
             label = textInternal;
         else if (address != null)
-            label = AddressBookProvider.resolveLabel(context, address.toString());
+            label = AddressBookLabelCache.getInstance(context).resolveLabel(address.toString());
         else
             label = "?";
         rowAddress.setText(label != null ? label : address.toString());
@@ -22,17 +22,19 @@ import javax.annotation.Nullable;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.ExchangeRate;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
 import org.dash.wallet.common.ui.CurrencyTextView;
 
 import com.google.common.base.Strings;
 
 import org.dash.wallet.common.Configuration;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
 import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.rates.ExchangeRatesViewModel;
 import de.schildbach.wallet_test.R;
 
@@ -48,7 +50,6 @@ import android.graphics.Color;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -86,7 +87,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
 
     private String query = null;
 
-    private static final int ID_BALANCE_LOADER = 0;
     private static final int ID_RATE_LOADER = 1;
     private static final int ID_BLOCKCHAIN_STATE_LOADER = 2;
 
@@ -142,13 +142,20 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
                 });
         config.registerOnSharedPreferenceChangeListener(this);
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(getViewLifecycleOwner(),
+        BlockchainStateRepository.getInstance().getState().observe(getViewLifecycleOwner(),
                 new Observer<de.schildbach.wallet.data.BlockchainState>() {
                     @Override
                     public void onChanged(de.schildbach.wallet.data.BlockchainState blockchainState) {
                         adapter.setBlockchainState(blockchainState);
                     }
                 });
+        WalletBalanceRepository.getInstance().getBalance(BalanceType.ESTIMATED).observe(getViewLifecycleOwner(),
+                new Observer<Coin>() {
+                    @Override
+                    public void onChanged(final Coin balance) {
+                        adapter.setBalance(balance);
+                    }
+                });
     }
 
     @Override
@@ -172,12 +179,10 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
         super.onResume();
 
         exchangeRatesViewModel.getRates();
-        loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
     }
 
     @Override
     public void onPause() {
-        loaderManager.destroyLoader(ID_BALANCE_LOADER);
         loaderManager.destroyLoader(ID_BLOCKCHAIN_STATE_LOADER);
 
         super.onPause();
@@ -267,22 +272,6 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
         }
     }
 
-    private final LoaderManager.LoaderCallbacks<Coin> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<Coin>() {
-        @Override
-        public Loader<Coin> onCreateLoader(final int id, final Bundle args) {
-            return new WalletBalanceLoader(activity, wallet);
-        }
-
-        @Override
-        public void onLoadFinished(final Loader<Coin> loader, final Coin balance) {
-            adapter.setBalance(balance);
-        }
-
-        @Override
-        public void onLoaderReset(final Loader<Coin> loader) {
-        }
-    };
-
     private final class ExchangeRatesAdapter extends RecyclerView.Adapter<ExchangeRateViewHolder> {
         private final LayoutInflater inflater = LayoutInflater.from(activity);
 
@@ -378,7 +367,7 @@ public final class ExchangeRatesFragment extends Fragment implements OnSharedPre
                     if (isChecked) {
                         setDefaultCurrency(exchangeRate.getCurrencyCode());
                         config.setExchangeCurrencyCode(exchangeRate.getCurrencyCode());
-                        WalletBalanceWidgetProvider.updateWidgets(activity, wallet);
+                        WalletBalanceWidgetProvider.updateWidgets(activity);
                     }
                 }
             });
@@ -33,21 +33,22 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProviders;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.Fiat;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
 import org.dash.wallet.common.Configuration;
 import org.dash.wallet.common.ui.CurrencyTextView;
 import org.dash.wallet.common.util.GenericUtils;
 
 import javax.annotation.Nullable;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.rates.ExchangeRate;
 import de.schildbach.wallet.rates.ExchangeRatesViewModel;
 import de.schildbach.wallet_test.R;
@@ -78,7 +79,6 @@ public final class HeaderBalanceFragment extends Fragment {
     @Nullable
     private ExchangeRate exchangeRate = null;
 
-    private static final int ID_BALANCE_LOADER = 0;
     private static final int ID_BLOCKCHAIN_STATE_LOADER = 1;
 
     private boolean initComplete = false;
@@ -138,20 +138,27 @@ public final class HeaderBalanceFragment extends Fragment {
             }
         });
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(getViewLifecycleOwner(), new Observer<de.schildbach.wallet.data.BlockchainState>() {
+        BlockchainStateRepository.getInstance().getState().observe(getViewLifecycleOwner(), new Observer<de.schildbach.wallet.data.BlockchainState>() {
             @Override
             public void onChanged(de.schildbach.wallet.data.BlockchainState blockchainState) {
                 HeaderBalanceFragment.this.blockchainState = blockchainState;
                 updateView();
             }
         });
+        WalletBalanceRepository.getInstance().getBalance(BalanceType.ESTIMATED).observe(getViewLifecycleOwner(),
+                new Observer<Coin>() {
+                    @Override
+                    public void onChanged(final Coin balance) {
+                        HeaderBalanceFragment.this.balance = balance;
+                        updateView();
+                    }
+                });
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
-        loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
         exchangeRatesViewModel.getRate(config.getExchangeCurrencyCode()).observe(this,
                 new Observer<ExchangeRate>() {
                     @Override
@@ -173,7 +180,6 @@ public final class HeaderBalanceFragment extends Fragment {
     @Override
     public void onPause() {
         loaderManager.destroyLoader(ID_BLOCKCHAIN_STATE_LOADER);
-        loaderManager.destroyLoader(ID_BALANCE_LOADER);
 
         autoLockHandler.removeCallbacksAndMessages(null);
         super.onPause();
@@ -250,22 +256,4 @@ public final class HeaderBalanceFragment extends Fragment {
         Intent intent = new Intent(getActivity(), ExchangeRatesActivity.class);
         getActivity().startActivity(intent);
     }
-
-    private final LoaderManager.LoaderCallbacks<Coin> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<Coin>() {
-        @Override
-        public Loader<Coin> onCreateLoader(final int id, final Bundle args) {
-            return new WalletBalanceLoader(activity, wallet);
-        }
-
-        @Override
-        public void onLoadFinished(@NonNull final Loader<Coin> loader, final Coin balance) {
-            HeaderBalanceFragment.this.balance = balance;
-
-            updateView();
-        }
-
-        @Override
-        public void onLoaderReset(@NonNull final Loader<Coin> loader) {
-        }
-    };
 }
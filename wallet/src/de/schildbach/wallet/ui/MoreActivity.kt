@@ -21,9 +21,9 @@ import android.os.Bundle
 import android.view.MenuItem
 import androidx.appcompat.widget.Toolbar
 import androidx.lifecycle.Observer
-import de.schildbach.wallet.AppDatabase
 import de.schildbach.wallet.WalletApplication
 import de.schildbach.wallet.data.BlockchainState
+import de.schildbach.wallet.data.BlockchainStateRepository
 import de.schildbach.wallet.util.showBlockchainSyncingMessage
 import de.schildbach.wallet_test.R
 import kotlinx.android.synthetic.main.activity_more.*
@@ -55,7 +55,7 @@ class MoreActivity : GlobalFooterActivity() {
 
         setTitle(R.string.more_title)
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(this, Observer {
+        BlockchainStateRepository.getInstance().getState().observe(this, Observer {
             blockchainState = it
         })
 
@@ -79,7 +79,7 @@ class OnboardingActivity : RestoreFromFileActivity() {
 
         walletApplication = (application as WalletApplication)
         if (walletApplication.walletFileExists()) {
-            regularFlow()
+            waitForWalletThenRegularFlow()
         } else {
             if (walletApplication.wallet == null) {
                 onboarding()
@@ -94,6 +94,25 @@ class OnboardingActivity : RestoreFromFileActivity() {
         }
     }
 
+    /**
+     * The wallet is loaded in the background, large ones take a while. Show how far it got.
+     */
+    private fun waitForWalletThenRegularFlow() {
+        walletApplication.walletLoadProgress.observe(this, Observer {
+            wallet_load_progress.visibility = if (it != null && it < 100) View.VISIBLE else View.GONE
+            wallet_load_progress.progress = it ?: 0
+        })
+        walletApplication.walletReady.observe(this, object : Observer<Boolean> {
+            override fun onChanged(ready: Boolean?) {
+                if (ready == true) {
+                    walletApplication.walletReady.removeObserver(this)
+                    wallet_load_progress.visibility = View.GONE
+                    regularFlow()
+                }
+            }
+        })
+    }
+
     private fun regularFlow() {
         if (walletApplication.configuration.v7TutorialCompleted) {
             upgradeOrStartMainActivity()
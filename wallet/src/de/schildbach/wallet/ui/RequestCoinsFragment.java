@@ -41,6 +41,7 @@ import de.schildbach.wallet.util.BitmapFragment;
 import de.schildbach.wallet.util.Bluetooth;
 import de.schildbach.wallet.util.Nfc;
 import de.schildbach.wallet.util.Qr;
+import de.schildbach.wallet.util.QrRenderer;
 import de.schildbach.wallet.util.Toast;
 import de.schildbach.wallet_test.R;
 
@@ -55,6 +56,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.nfc.NdefMessage;
@@ -93,6 +95,8 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
 
     private ImageView qrView;
     private BitmapDrawable qrCodeBitmap;
+    @Nullable
+    private QrRenderer.Request qrRenderRequest;
     private CheckBox acceptBluetoothPaymentView;
     private TextView initiateRequestView;
 
@@ -150,7 +154,8 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
         qrView.setOnClickListener(new OnClickListener() {
             @Override
             public void onClick(final View v) {
-                BitmapFragment.show(getFragmentManager(), qrCodeBitmap.getBitmap());
+                if (qrCodeBitmap != null)
+                    BitmapFragment.show(getFragmentManager(), qrCodeBitmap.getBitmap());
             }
         });
 
@@ -245,6 +250,10 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
     @Override
     public void onPause() {
         amountCalculatorLink.setListener(null);
+        if (qrRenderRequest != null) {
+            qrRenderRequest.cancel();
+            qrRenderRequest = null;
+        }
 
         super.onPause();
     }
@@ -390,9 +399,17 @@ public final class RequestCoinsFragment extends Fragment implements NfcAdapter.C
             qrContent = "DASH:-" + Qr.encodeBinary(paymentRequest);
         else
             qrContent = bitcoinRequest;
-        qrCodeBitmap = new BitmapDrawable(getResources(), Qr.bitmap(qrContent));
-        qrCodeBitmap.setFilterBitmap(false);
-        qrView.setImageDrawable(qrCodeBitmap);
+        // typing an amount changes the content with every key, only the latest one is shown
+        if (qrRenderRequest != null)
+            qrRenderRequest.cancel();
+        qrRenderRequest = QrRenderer.getInstance(activity).render(qrContent, new QrRenderer.Callback() {
+            @Override
+            public void onRendered(final Bitmap bitmap) {
+                qrCodeBitmap = new BitmapDrawable(getResources(), bitmap);
+                qrCodeBitmap.setFilterBitmap(false);
+                qrView.setImageDrawable(qrCodeBitmap);
+            }
+        });
 
         // update initiate request message
         final SpannableStringBuilder initiateText = new SpannableStringBuilder(
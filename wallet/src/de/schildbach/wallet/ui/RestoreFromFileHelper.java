@@ -40,11 +40,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Collections;
 import java.util.Comparator;
@@ -54,7 +52,6 @@ import java.util.List;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.util.Crypto;
-import de.schildbach.wallet.util.Io;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
 
@@ -281,16 +278,10 @@ public class RestoreFromFileHelper {
 
     private static void restoreWalletFromEncrypted(final Activity activity, final File file, final String password, final OnRestoreWalletListener listener) {
         try {
-            final BufferedReader cipherIn = new BufferedReader(
-                    new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
-            final StringBuilder cipherText = new StringBuilder();
-            Io.copy(cipherIn, cipherText, Constants.BACKUP_MAX_CHARS);
-            cipherIn.close();
-
-            final byte[] plainText = Crypto.decryptBytes(cipherText.toString(), password.toCharArray());
-            final InputStream is = new ByteArrayInputStream(plainText);
-
-            listener.onRestoreWallet(WalletUtils.restoreWalletFromProtobufOrBase58(is, Constants.NETWORK_PARAMETERS));
+            // decrypted while being read, so neither the cipher text nor the wallet is held in memory as a whole
+            listener.onRestoreWallet(WalletUtils.restoreWalletFromEncrypted(new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), Charsets.UTF_8)), password.toCharArray(),
+                    Constants.NETWORK_PARAMETERS));
 
             log.info("successfully restored encrypted wallet: {}", file);
         } catch (final IOException x) {
@@ -18,7 +18,6 @@
 package de.schildbach.wallet.ui;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,9 +35,7 @@ import org.dash.wallet.common.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.ui.widget.UpgradeWalletDisclaimerDialog;
-import de.schildbach.wallet.util.Crypto;
 import de.schildbach.wallet.util.FingerprintHelper;
-import de.schildbach.wallet.util.Io;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
 
@@ -172,15 +169,9 @@ public final class RestoreWalletActivity extends AbstractWalletActivity
 
     private void restoreWalletFromEncrypted(final InputStream cipher, final String password) {
         try {
-            final BufferedReader cipherIn = new BufferedReader(new InputStreamReader(cipher, Charsets.UTF_8));
-            final StringBuilder cipherText = new StringBuilder();
-            Io.copy(cipherIn, cipherText, Constants.BACKUP_MAX_CHARS);
-            cipherIn.close();
-
-            final byte[] plainText = Crypto.decryptBytes(cipherText.toString(), password.toCharArray());
-            final InputStream is = new ByteArrayInputStream(plainText);
-
-            restoreWallet(WalletUtils.restoreWalletFromProtobufOrBase58(is, Constants.NETWORK_PARAMETERS));
+            restoreWallet(WalletUtils.restoreWalletFromEncrypted(
+                    new BufferedReader(new InputStreamReader(cipher, Charsets.UTF_8)), password.toCharArray(),
+                    Constants.NETWORK_PARAMETERS));
             application.getConfiguration().setRestoringBackup(true);
             log.info("successfully restored encrypted wallet from external source");
         } catch (final IOException x) {
@@ -235,7 +226,7 @@ public final class RestoreWalletActivity extends AbstractWalletActivity
                 // Upgrade the wallet now
                 //
                 wallet.addKeyChain(path);
-                application.saveWallet();
+                application.saveWalletLater();
                 //
                 // Tell the user that the wallet is being upgraded (BIP44)
                 // and they will have to enter a PIN.
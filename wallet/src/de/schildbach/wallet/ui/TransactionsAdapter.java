@@ -22,13 +22,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nullable;
 
 import org.bitcoinj.core.Address;
+import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.StoredBlock;
@@ -43,9 +47,11 @@ import org.dash.wallet.common.ui.CurrencyTextView;
 import org.dash.wallet.common.ui.Formats;
 import org.dash.wallet.common.util.GenericUtils;
 
+import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.data.AddressBookProvider;
+import de.schildbach.wallet.data.AddressBookLabelCache;
+import de.schildbach.wallet.data.TransactionSummary;
 
 import de.schildbach.wallet.util.FiatExtensionsKt;
 import de.schildbach.wallet.util.TransactionUtil;
@@ -54,8 +60,11 @@ import de.schildbach.wallet_test.R;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.view.LayoutInflater;
@@ -77,7 +86,10 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     @Nullable
     private final OnClickListener onClickListener;
 
-    private final List<Transaction> transactions = new ArrayList<Transaction>();
+    // only the ids are kept for the whole list, transactions are looked up per page
+    private final List<Sha256Hash> txIds = new ArrayList<Sha256Hash>();
+    @Nullable
+    private List<Sha256Hash> replacedFrom;
     private MonetaryFormat format;
 
     private long selectedItemId = RecyclerView.NO_ID;
@@ -97,9 +109,27 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
     private static final int VIEW_TYPE_TRANSACTION = 0;
 
-    private Map<Sha256Hash, TransactionCacheEntry> transactionCache = new HashMap<Sha256Hash, TransactionCacheEntry>();
+    // row view-models are only kept for a sliding window of pages around the visible range
+    private static final int PAGE_SIZE = 50;
+    private static final int WINDOW_PAGES = 3;
+
+    private static final Executor prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private int lastBoundPage = -1;
+    private int prefetchedPage = -1;
+    private int cacheGeneration = 0;
+
+    private final Map<Sha256Hash, TransactionCacheEntry> transactionCache = new LinkedHashMap<Sha256Hash, TransactionCacheEntry>(
+            PAGE_SIZE * WINDOW_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Sha256Hash, TransactionCacheEntry> eldest) {
+            return size() > PAGE_SIZE * WINDOW_PAGES;
+        }
+    };
 
     private static class TransactionCacheEntry {
+        private final Transaction tx;
         private final Coin value;
         private final boolean sent;
         private final boolean self;
@@ -110,8 +140,10 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         private final String addressLabel;
         private final Transaction.Type type;
 
-        private TransactionCacheEntry(final Coin value, final boolean sent, final boolean self, final boolean showFee, final @Nullable Address address,
+        private TransactionCacheEntry(final Transaction tx, final Coin value, final boolean sent, final boolean self,
+                                      final boolean showFee, final @Nullable Address address,
                                       final @Nullable String addressLabel, final Transaction.Type type) {
+            this.tx = tx;
             this.value = value;
             this.sent = sent;
             this.self = self;
@@ -155,25 +187,46 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     }
 
     public void clear() {
-        transactions.clear();
+        txIds.clear();
+        replacedFrom = null;
 
         notifyDataSetChanged();
     }
 
     public void replace(final Transaction tx) {
-        transactions.clear();
-        transactions.add(tx);
+        txIds.clear();
+        txIds.add(tx.getTxId());
+        replacedFrom = null;
 
         notifyDataSetChanged();
     }
 
-    public void replace(final Collection<Transaction> transactions) {
-        this.transactions.clear();
-        this.transactions.addAll(transactions);
+    public void replace(final Collection<Sha256Hash> txIds) {
+        this.txIds.clear();
+        this.txIds.addAll(txIds);
+        this.replacedFrom = null;
+        prefetchedPage = -1;
 
         notifyDataSetChanged();
     }
 
+    /**
+     * Replaces the list by dispatching range updates from the given diff. If the diff was not
+     * calculated against the list currently shown, falls back to a full invalidation.
+     */
+    public void replace(final List<Sha256Hash> txIds, @Nullable final List<Sha256Hash> previous,
+                        @Nullable final DiffUtil.DiffResult diff) {
+        if (diff == null || previous == null || previous != replacedFrom) {
+            replace(txIds);
+        } else {
+            this.txIds.clear();
+            this.txIds.addAll(txIds);
+            prefetchedPage = -1;
+            diff.dispatchUpdatesTo(this);
+        }
+        this.replacedFrom = txIds;
+    }
+
     public void setSelectedItemId(final long itemId) {
         selectedItemId = itemId;
 
@@ -182,19 +235,149 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
     public void clearCacheAndNotifyDataSetChanged() {
         transactionCache.clear();
+        cacheGeneration++;
+        prefetchedPage = -1;
 
         notifyDataSetChanged();
     }
 
+    private TransactionCacheEntry createCacheEntry(final Transaction tx) {
+        final Coin value = tx.getValue(wallet);
+        final boolean sent = value.signum() < 0;
+        final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
+        final Coin fee = tx.getFee();
+        final boolean showFee = sent && fee != null && !fee.isZero();
+        final Address address;
+        if (sent) {
+            List<Address> addresses = WalletUtils.getToAddressOfSent(tx, wallet);
+            address = addresses.isEmpty() ? null : addresses.get(0);
+        } else {
+            address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
+        }
+        final String addressLabel = address != null
+                ? AddressBookLabelCache.getInstance(context).resolveLabel(address.toBase58()) : null;
+
+        final Transaction.Type txType = tx.getType();
+
+        return new TransactionCacheEntry(tx, value, sent, self, showFee, address, addressLabel, txType);
+    }
+
+    private TransactionCacheEntry createCacheEntry(final Transaction tx, final TransactionSummary summary) {
+        Address address = null;
+        if (summary.getAddress() != null) {
+            try {
+                address = Address.fromString(Constants.NETWORK_PARAMETERS, summary.getAddress());
+            } catch (final AddressFormatException x) {
+                // fall through with no address
+            }
+        }
+        final boolean showFee = summary.getSent() && summary.getFee() != 0;
+
+        return new TransactionCacheEntry(tx, summary.getValueCoin(), summary.getSent(), summary.getSelf(),
+                showFee, address, summary.getAddressLabel(), tx.getType());
+    }
+
+    /**
+     * Fills the row cache from persisted summaries, so that the given rows are bound without
+     * walking the wallet.
+     */
+    public void prefill(final List<Transaction> transactions, final Map<String, TransactionSummary> summaries) {
+        for (final Transaction tx : transactions) {
+            final TransactionSummary summary = summaries.get(tx.getTxId().toString());
+            if (summary != null)
+                transactionCache.put(tx.getTxId(), createCacheEntry(tx, summary));
+        }
+    }
+
+    /**
+     * @return the persisted summaries of the given transactions, keyed by transaction id
+     */
+    private static Map<String, TransactionSummary> loadSummaries(final List<Sha256Hash> pageTxIds) {
+        final List<String> txIds = new ArrayList<String>(pageTxIds.size());
+        for (final Sha256Hash txId : pageTxIds)
+            txIds.add(txId.toString());
+
+        final Map<String, TransactionSummary> summaries = new HashMap<String, TransactionSummary>();
+        for (final TransactionSummary summary : AppDatabase.getAppDatabase().transactionSummaryDao().loadSync(txIds))
+            summaries.put(summary.getTxId(), summary);
+        return summaries;
+    }
+
+    /**
+     * @return the row of the given position, looking up its transaction if the row is not cached,
+     *         or null if the transaction is no longer in the wallet
+     */
+    @Nullable
+    private TransactionCacheEntry getRow(final int position) {
+        final Sha256Hash txId = txIds.get(position);
+        TransactionCacheEntry row = transactionCache.get(txId);
+        if (row == null) {
+            final Transaction tx = wallet.getTransaction(txId);
+            if (tx == null)
+                return null;
+            row = createCacheEntry(tx);
+            transactionCache.put(txId, row);
+        }
+        return row;
+    }
+
+    /**
+     * Makes sure the page following the scroll direction is materialized before it is bound.
+     */
+    private void onPageBound(final int position) {
+        final int page = position / PAGE_SIZE;
+        if (page == lastBoundPage)
+            return;
+
+        final int nextPage = page >= lastBoundPage ? page + 1 : page - 1;
+        lastBoundPage = page;
+        if (nextPage < 0 || nextPage * PAGE_SIZE >= txIds.size() || nextPage == prefetchedPage)
+            return;
+        prefetchedPage = nextPage;
+
+        final int from = nextPage * PAGE_SIZE;
+        final List<Sha256Hash> pageTxIds = new ArrayList<Sha256Hash>(
+                txIds.subList(from, Math.min(from + PAGE_SIZE, txIds.size())));
+        final int generation = cacheGeneration;
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+                // precomputed rows spare walking the wallet, anything not yet persisted is derived from it
+                final Map<String, TransactionSummary> summaries = loadSummaries(pageTxIds);
+                final Map<Sha256Hash, TransactionCacheEntry> prefetched = new LinkedHashMap<Sha256Hash, TransactionCacheEntry>();
+                for (final Sha256Hash txId : pageTxIds) {
+                    final Transaction tx = wallet.getTransaction(txId);
+                    if (tx == null)
+                        continue;
+                    final TransactionSummary summary = summaries.get(txId.toString());
+                    prefetched.put(txId, summary != null ? createCacheEntry(tx, summary) : createCacheEntry(tx));
+                }
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != cacheGeneration)
+                            return; // labels might have changed meanwhile
+                        for (final Map.Entry<Sha256Hash, TransactionCacheEntry> entry : prefetched.entrySet())
+                            if (!transactionCache.containsKey(entry.getKey()))
+                                transactionCache.put(entry.getKey(), entry.getValue());
+                    }
+                });
+            }
+        });
+    }
+
     @Override
     public int getItemCount() {
-        int count = transactions.size();
+        int count = txIds.size();
 
         return count;
     }
 
     public int getTransactionsCount() {
-        return transactions.size();
+        return txIds.size();
     }
 
     @Override
@@ -202,7 +385,7 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         if (position == RecyclerView.NO_POSITION)
             return RecyclerView.NO_ID;
 
-        return WalletUtils.longHash(transactions.get(position).getHash());
+        return WalletUtils.longHash(txIds.get(position));
     }
 
     @Override
@@ -231,15 +414,22 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             final long itemId = getItemId(position);
             transactionHolder.itemView.setActivated(itemId == selectedItemId);
 
-            final Transaction tx = transactions.get(position);
-            transactionHolder.bind(tx);
+            final TransactionCacheEntry row = getRow(position);
+            // a transaction that has just been removed from the wallet disappears with the next update
+            transactionHolder.itemView.setVisibility(row != null ? View.VISIBLE : View.INVISIBLE);
+            if (row != null)
+                transactionHolder.bind(row);
+            onPageBound(position);
 
             transactionHolder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(final View v) {
-                    Transaction tx = transactions.get(transactionHolder.getAdapterPosition());
-                    if (onClickListener != null) {
-                        onClickListener.onTransactionRowClicked(tx);
+                    final int adapterPosition = transactionHolder.getAdapterPosition();
+                    if (adapterPosition == RecyclerView.NO_POSITION)
+                        return;
+                    final TransactionCacheEntry row = getRow(adapterPosition);
+                    if (row != null && onClickListener != null) {
+                        onClickListener.onTransactionRowClicked(row.tx);
                     }
                 }
             });
@@ -287,7 +477,8 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             dateFormat = new SimpleDateFormat("MMM dd, yyyy KK:mm a", Locale.getDefault());
         }
 
-        private void bind(final Transaction tx) {
+        private void bind(final TransactionCacheEntry txCache) {
+            final Transaction tx = txCache.tx;
             if (itemView instanceof CardView)
                 ((CardView) itemView)
                         .setCardBackgroundColor(itemView.isActivated() ? colorBackgroundSelected : colorBackground);
@@ -297,28 +488,6 @@ public class TransactionsAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
             final TransactionConfidence.IXType ixStatus = confidence.getIXType();
 
-            TransactionCacheEntry txCache = transactionCache.get(tx.getTxId());
-            if (txCache == null) {
-                final Coin value = tx.getValue(wallet);
-                final boolean sent = value.signum() < 0;
-                final boolean self = WalletUtils.isEntirelySelf(tx, wallet);
-                final boolean showFee = sent && fee != null && !fee.isZero();
-                final Address address;
-                if (sent) {
-                    List<Address> addresses = WalletUtils.getToAddressOfSent(tx, wallet);
-                    address = addresses.isEmpty() ? null : addresses.get(0);
-                } else {
-                    address = WalletUtils.getWalletAddressOfReceived(tx, wallet);
-                }
-                final String addressLabel = address != null
-                        ? AddressBookProvider.resolveLabel(context, address.toBase58()) : null;
-
-                final Transaction.Type txType = tx.getType();
-
-                txCache = new TransactionCacheEntry(value, sent, self, showFee, address, addressLabel, txType);
-                transactionCache.put(tx.getTxId(), txCache);
-            }
-
             //
             // Assign the colors of text and values
             //
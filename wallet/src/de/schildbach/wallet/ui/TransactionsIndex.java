@@ -0,0 +1,376 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.Transaction.Purpose;
+import org.bitcoinj.core.TransactionConfidence;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionConfidence.IXType;
+import org.bitcoinj.core.listeners.TransactionConfidenceEventListener;
+import org.bitcoinj.utils.Threading;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.bitcoinj.wallet.listeners.WalletCoinsReceivedEventListener;
+import org.bitcoinj.wallet.listeners.WalletCoinsSentEventListener;
+import org.bitcoinj.wallet.listeners.WalletReorganizeEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import de.schildbach.wallet.Constants;
+import de.schildbach.wallet.ui.WalletTransactionsFragment.Direction;
+
+/**
+ * Keeps the transactions of a wallet sorted and pre-classified by direction, so that the
+ * transaction list can be refreshed by applying only the transactions that were added or
+ * changed since the last refresh instead of re-sorting the whole wallet.
+ *
+ * Deltas are collected from wallet listeners on the wallet thread; {@link #update()} applies
+ * them and must be called from a background thread.
+ */
+public class TransactionsIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionsIndex.class);
+
+    /** returned by {@link #update()} if the index had to be rebuilt from scratch */
+    public static final int REBUILT = -1;
+
+    // rows show "confirming" below this depth and nothing that changes with depth beyond it
+    private static final int CONFIRMED_DEPTH = 6;
+
+    /**
+     * Immutable snapshot of a transaction's sort key, classification and of what its row shows.
+     * A transaction whose row would look different is represented by a new instance, so identity
+     * comparison tells whether a row needs to be rebound. Depth only counts up to where the row
+     * stops showing it, so new blocks do not change entries of confirmed transactions.
+     */
+    public static final class Entry {
+        public final Sha256Hash txId;
+        public final boolean pending;
+        public final long time;
+        public final boolean sent;
+        public final boolean internal;
+        private final Coin value;
+        private final ConfidenceType confidenceType;
+        private final IXType ixType;
+        private final boolean hasErrors;
+        private final int displayedDepth;
+        private final boolean hasExchangeRate;
+
+        private Entry(final Transaction tx, final Wallet wallet) {
+            this.txId = tx.getTxId();
+            final TransactionConfidence confidence = tx.getConfidence();
+            this.confidenceType = confidence.getConfidenceType();
+            this.pending = confidenceType == ConfidenceType.PENDING;
+            final Date updateTime = tx.getUpdateTime();
+            this.time = updateTime != null ? updateTime.getTime() : 0;
+            this.value = tx.getValue(wallet);
+            this.sent = value.signum() < 0;
+            this.internal = tx.getPurpose() == Purpose.KEY_ROTATION;
+            this.ixType = confidence.getIXType();
+            this.hasErrors = confidence.hasErrors();
+            final int depth = confidenceType == ConfidenceType.BUILDING ? confidence.getDepthInBlocks() : 0;
+            this.displayedDepth = Math.min(depth, tx.isCoinBase()
+                    ? Constants.NETWORK_PARAMETERS.getSpendableCoinbaseDepth() : CONFIRMED_DEPTH);
+            this.hasExchangeRate = tx.getExchangeRate() != null;
+        }
+
+        public boolean matches(@Nullable final Direction direction) {
+            if (direction == null)
+                return true;
+            if (internal)
+                return false;
+            return direction == Direction.SENT ? sent : !sent;
+        }
+
+        private boolean sameSortKey(final Entry other) {
+            return pending == other.pending && time == other.time;
+        }
+
+        private boolean samePosition(final Entry other) {
+            return sameSortKey(other) && sent == other.sent && internal == other.internal;
+        }
+
+        private boolean sameRow(final Entry other) {
+            return samePosition(other) && value.equals(other.value) && confidenceType == other.confidenceType
+                    && ixType == other.ixType && hasErrors == other.hasErrors
+                    && displayedDepth == other.displayedDepth && hasExchangeRate == other.hasExchangeRate;
+        }
+    }
+
+    public static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry entry1, final Entry entry2) {
+            if (entry1.pending != entry2.pending)
+                return entry1.pending ? -1 : 1;
+
+            if (entry1.time != entry2.time)
+                return entry1.time > entry2.time ? -1 : 1;
+
+            return entry1.txId.compareTo(entry2.txId);
+        }
+    };
+
+    private final Wallet wallet;
+
+    private final Map<Sha256Hash, Entry> entries = new HashMap<>();
+    private final List<Entry> all = new ArrayList<>();
+    private final List<Entry> received = new ArrayList<>();
+    private final List<Entry> sent = new ArrayList<>();
+
+    // guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private Set<Sha256Hash> pendingChanges = new HashSet<>();
+    private boolean pendingRebuild = true;
+
+    public TransactionsIndex(final Wallet wallet) {
+        this.wallet = wallet;
+    }
+
+    public void start() {
+        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, deltaListener);
+        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, deltaListener);
+        wallet.addReorganizeEventListener(Threading.SAME_THREAD, deltaListener);
+        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, deltaListener);
+    }
+
+    public void stop() {
+        wallet.removeTransactionConfidenceEventListener(deltaListener);
+        wallet.removeReorganizeEventListener(deltaListener);
+        wallet.removeCoinsSentEventListener(deltaListener);
+        wallet.removeCoinsReceivedEventListener(deltaListener);
+    }
+
+    /** forces the next {@link #update()} to rebuild the index from scratch */
+    public void invalidate() {
+        synchronized (pendingLock) {
+            pendingRebuild = true;
+            pendingChanges.clear();
+        }
+    }
+
+    /** @return true if the next {@link #update()} has to walk the whole wallet */
+    public boolean needsRebuild() {
+        synchronized (pendingLock) {
+            return pendingRebuild;
+        }
+    }
+
+    public void markChanged(final Sha256Hash txId) {
+        synchronized (pendingLock) {
+            if (!pendingRebuild)
+                pendingChanges.add(txId);
+        }
+    }
+
+    /**
+     * Applies all deltas collected since the previous call.
+     *
+     * @return the number of transactions that were added, removed or changed in a way their row
+     *         shows, or {@link #REBUILT}
+     */
+    public synchronized int update() {
+        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+        final Set<Sha256Hash> changes;
+        final boolean rebuild;
+        synchronized (pendingLock) {
+            changes = pendingChanges;
+            rebuild = pendingRebuild;
+            pendingChanges = new HashSet<>();
+            pendingRebuild = false;
+        }
+
+        if (rebuild) {
+            rebuild();
+            return REBUILT;
+        }
+
+        int changed = 0;
+        for (final Sha256Hash txId : changes)
+            if (apply(txId))
+                changed++;
+
+        // transactions are only ever removed by a reorganize or a wallet reset, both of which
+        // invalidate the index; this is a cheap safety net in case a removal slipped through
+        if (entries.size() != walletTransactionCount()) {
+            log.info("transaction index out of sync with wallet, rebuilding");
+            rebuild();
+            return REBUILT;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @return a copy of the sorted entries matching the given direction
+     */
+    public synchronized List<Entry> snapshot(@Nullable final Direction direction) {
+        return new ArrayList<>(listFor(direction));
+    }
+
+    public synchronized int size(@Nullable final Direction direction) {
+        return listFor(direction).size();
+    }
+
+    private List<Entry> listFor(@Nullable final Direction direction) {
+        if (direction == null)
+            return all;
+        return direction == Direction.SENT ? sent : received;
+    }
+
+    private void rebuild() {
+        entries.clear();
+        all.clear();
+        received.clear();
+        sent.clear();
+
+        for (final Transaction tx : wallet.getTransactions(true)) {
+            final Entry entry = new Entry(tx, wallet);
+            entries.put(entry.txId, entry);
+            all.add(entry);
+            if (entry.matches(Direction.RECEIVED))
+                received.add(entry);
+            else if (entry.matches(Direction.SENT))
+                sent.add(entry);
+        }
+
+        Collections.sort(all, ENTRY_COMPARATOR);
+        Collections.sort(received, ENTRY_COMPARATOR);
+        Collections.sort(sent, ENTRY_COMPARATOR);
+    }
+
+    // returns whether the transaction list changed
+    private boolean apply(final Sha256Hash txId) {
+        final Entry oldEntry = entries.get(txId);
+        final Transaction tx = wallet.getTransaction(txId);
+
+        if (tx == null) {
+            if (oldEntry == null)
+                return false;
+            entries.remove(txId);
+            remove(oldEntry);
+            return true;
+        }
+
+        final Entry newEntry = new Entry(tx, wallet);
+        if (oldEntry != null && oldEntry.sameRow(newEntry)) {
+            // most often a confirmed transaction getting deeper, keep the entry so the row is not rebound
+            return false;
+        }
+        if (oldEntry != null && oldEntry.samePosition(newEntry)) {
+            // position is unchanged, only the row contents need to be rebound
+            entries.put(txId, newEntry);
+            replace(oldEntry, newEntry);
+            return true;
+        }
+
+        if (oldEntry != null)
+            remove(oldEntry);
+        entries.put(txId, newEntry);
+        insert(newEntry);
+        return true;
+    }
+
+    private void insert(final Entry entry) {
+        insertSorted(all, entry);
+        if (entry.matches(Direction.RECEIVED))
+            insertSorted(received, entry);
+        else if (entry.matches(Direction.SENT))
+            insertSorted(sent, entry);
+    }
+
+    private void remove(final Entry entry) {
+        removeSorted(all, entry);
+        if (entry.matches(Direction.RECEIVED))
+            removeSorted(received, entry);
+        else if (entry.matches(Direction.SENT))
+            removeSorted(sent, entry);
+    }
+
+    private void replace(final Entry oldEntry, final Entry newEntry) {
+        replaceSorted(all, oldEntry, newEntry);
+        if (oldEntry.matches(Direction.RECEIVED))
+            replaceSorted(received, oldEntry, newEntry);
+        else if (oldEntry.matches(Direction.SENT))
+            replaceSorted(sent, oldEntry, newEntry);
+    }
+
+    private static void insertSorted(final List<Entry> list, final Entry entry) {
+        final int index = Collections.binarySearch(list, entry, ENTRY_COMPARATOR);
+        list.add(index < 0 ? -index - 1 : index, entry);
+    }
+
+    private static void removeSorted(final List<Entry> list, final Entry entry) {
+        final int index = Collections.binarySearch(list, entry, ENTRY_COMPARATOR);
+        if (index >= 0)
+            list.remove(index);
+    }
+
+    private static void replaceSorted(final List<Entry> list, final Entry oldEntry, final Entry newEntry) {
+        final int index = Collections.binarySearch(list, oldEntry, ENTRY_COMPARATOR);
+        if (index >= 0)
+            list.set(index, newEntry);
+    }
+
+    private int walletTransactionCount() {
+        return wallet.getPoolSize(Pool.UNSPENT) + wallet.getPoolSize(Pool.SPENT)
+                + wallet.getPoolSize(Pool.PENDING) + wallet.getPoolSize(Pool.DEAD);
+    }
+
+    private final DeltaListener deltaListener = new DeltaListener();
+
+    private class DeltaListener implements WalletCoinsReceivedEventListener, WalletCoinsSentEventListener,
+            WalletReorganizeEventListener, TransactionConfidenceEventListener {
+        @Override
+        public void onCoinsReceived(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                    final Coin newBalance) {
+            markChanged(tx.getTxId());
+        }
+
+        @Override
+        public void onCoinsSent(final Wallet wallet, final Transaction tx, final Coin prevBalance,
+                                final Coin newBalance) {
+            markChanged(tx.getTxId());
+        }
+
+        @Override
+        public void onReorganize(final Wallet wallet) {
+            invalidate();
+        }
+
+        @Override
+        public void onTransactionConfidenceChanged(final Wallet wallet, final Transaction tx) {
+            markChanged(tx.getTxId());
+        }
+    }
+}
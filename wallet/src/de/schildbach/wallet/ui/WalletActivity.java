@@ -69,10 +69,10 @@ import java.io.IOException;
 import java.util.Currency;
 import java.util.Locale;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.WalletBalanceWidgetProvider;
+import de.schildbach.wallet.data.BlockchainStateRepository;
 import de.schildbach.wallet.data.PaymentIntent;
 import de.schildbach.wallet.ui.InputParser.BinaryInputParser;
 import de.schildbach.wallet.ui.InputParser.StringInputParser;
@@ -173,7 +173,7 @@ public final class WalletActivity extends AbstractBindServiceActivity
             }
         });
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(this, new Observer<de.schildbach.wallet.data.BlockchainState>() {
+        BlockchainStateRepository.getInstance().getState().observe(this, new Observer<de.schildbach.wallet.data.BlockchainState>() {
             @Override
             public void onChanged(de.schildbach.wallet.data.BlockchainState blockchainState) {
                 WalletActivity.this.blockchainState = blockchainState;
@@ -867,7 +867,7 @@ public final class WalletActivity extends AbstractBindServiceActivity
                 // Upgrade the wallet now
                 //
                 wallet.addKeyChain(path);
-                application.saveWallet();
+                application.saveWalletLater();
                 //
                 // Tell the user that the wallet is being upgraded (BIP44)
                 // and they will have to enter a PIN.
@@ -1046,7 +1046,7 @@ public final class WalletActivity extends AbstractBindServiceActivity
             public void onClick(DialogInterface dialog, int which) {
                 config.setExchangeCurrencyCodeDetected(true);
                 config.setExchangeCurrencyCode(newCurrencyCode);
-                WalletBalanceWidgetProvider.updateWidgets(WalletActivity.this, wallet);
+                WalletBalanceWidgetProvider.updateWidgets(WalletActivity.this);
             }
         });
         dialogBuilder.setNegativeButton(getString(R.string.leave_as, currentCurrencyCode), new OnClickListener() {
@@ -25,13 +25,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.schildbach.wallet.Constants;
-import de.schildbach.wallet.util.Qr;
+import de.schildbach.wallet.util.QrRenderer;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
 
 import android.app.Activity;
 import android.app.Dialog;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import androidx.fragment.app.DialogFragment;
@@ -69,6 +70,8 @@ public class WalletAddressDialogFragment extends DialogFragment {
     }
 
     private Activity activity;
+    @Nullable
+    private QrRenderer.Request qrRenderRequest;
 
     @Override
     public void onAttach(final Activity activity) {
@@ -90,10 +93,15 @@ public class WalletAddressDialogFragment extends DialogFragment {
         dialog.setCanceledOnTouchOutside(true);
 
         final String uri = BitcoinURI.convertToBitcoinURI(address, null, addressLabel, null);
-        final BitmapDrawable bitmap = new BitmapDrawable(getResources(), Qr.bitmap(uri));
-        bitmap.setFilterBitmap(false);
         final ImageView imageView = (ImageView) dialog.findViewById(R.id.wallet_address_dialog_image);
-        imageView.setImageDrawable(bitmap);
+        qrRenderRequest = QrRenderer.getInstance(activity).render(uri, new QrRenderer.Callback() {
+            @Override
+            public void onRendered(final Bitmap qrCode) {
+                final BitmapDrawable bitmap = new BitmapDrawable(getResources(), qrCode);
+                bitmap.setFilterBitmap(false);
+                imageView.setImageDrawable(bitmap);
+            }
+        });
 
         final View labelButtonView = dialog.findViewById(R.id.wallet_address_dialog_label_button);
         final TextView labelView = (TextView) dialog.findViewById(R.id.wallet_address_dialog_label);
@@ -126,4 +134,12 @@ public class WalletAddressDialogFragment extends DialogFragment {
 
         return dialog;
     }
+
+    @Override
+    public void onDestroy() {
+        if (qrRenderRequest != null)
+            qrRenderRequest.cancel();
+
+        super.onDestroy();
+    }
 }
@@ -32,7 +32,7 @@ import org.slf4j.LoggerFactory;
 import org.dash.wallet.common.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
-import de.schildbach.wallet.util.Qr;
+import de.schildbach.wallet.util.QrRenderer;
 import de.schildbach.wallet.util.ThrottlingWalletChangeListener;
 import de.schildbach.wallet_test.R;
 
@@ -43,6 +43,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
@@ -74,6 +75,8 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
     private ImageView currentAddressQrView;
 
     private BitmapDrawable currentAddressQrBitmap = null;
+    @Nullable
+    private QrRenderer.Request qrRenderRequest;
     private AddressAndLabel currentAddressQrAddress = null;
     private final AtomicReference<String> currentAddressUriRef = new AtomicReference<String>();
 
@@ -127,6 +130,10 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
     @Override
     public void onPause() {
         loaderManager.destroyLoader(ID_ADDRESS_LOADER);
+        if (qrRenderRequest != null) {
+            qrRenderRequest.cancel();
+            qrRenderRequest = null;
+        }
 
         super.onPause();
     }
@@ -145,7 +152,7 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
         private final Wallet wallet;
         private Configuration config;
 
-        private static final Logger log = LoggerFactory.getLogger(WalletBalanceLoader.class);
+        private static final Logger log = LoggerFactory.getLogger(CurrentAddressLoader.class);
 
         public CurrentAddressLoader(final Context context, final Wallet wallet, final Configuration config) {
             super(context);
@@ -245,12 +252,18 @@ public final class WalletAddressFragment extends Fragment implements NfcAdapter.
                 final String addressStr = BitcoinURI.convertToBitcoinURI(currentAddressQrAddress.address, null,
                         currentAddressQrAddress.label, null);
 
-                currentAddressQrBitmap = new BitmapDrawable(getResources(), Qr.bitmap(addressStr));
-                currentAddressQrBitmap.setFilterBitmap(false);
-
                 currentAddressUriRef.set(addressStr);
 
-                updateView();
+                if (qrRenderRequest != null)
+                    qrRenderRequest.cancel();
+                qrRenderRequest = QrRenderer.getInstance(activity).render(addressStr, new QrRenderer.Callback() {
+                    @Override
+                    public void onRendered(final Bitmap bitmap) {
+                        currentAddressQrBitmap = new BitmapDrawable(getResources(), bitmap);
+                        currentAddressQrBitmap.setFilterBitmap(false);
+                        updateView();
+                    }
+                });
             }
         }
 
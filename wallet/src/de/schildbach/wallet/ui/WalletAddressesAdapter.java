@@ -26,7 +26,7 @@ import org.bitcoinj.core.ECKey;
 import org.bitcoinj.wallet.Wallet;
 
 import de.schildbach.wallet.Constants;
-import de.schildbach.wallet.data.AddressBookProvider;
+import de.schildbach.wallet.data.AddressBookLabelCache;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
 
@@ -145,7 +145,7 @@ public class WalletAddressesAdapter extends BaseAdapter {
         addressView.setTextColor(isRotateKey ? colorInsignificant : colorSignificant);
 
         final TextView labelView = (TextView) row.findViewById(R.id.address_book_row_label);
-        final String label = AddressBookProvider.resolveLabel(context, address.toString());
+        final String label = AddressBookLabelCache.getInstance(context).resolveLabel(address.toString());
         if (label != null) {
             labelView.setText(label);
             labelView.setTextColor(isRotateKey ? colorInsignificant : colorLessSignificant);
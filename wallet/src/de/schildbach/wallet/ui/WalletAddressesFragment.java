@@ -34,6 +34,7 @@ import org.dash.wallet.common.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.AddressBookProvider;
+import de.schildbach.wallet.data.AddressBookLabelCache;
 import de.schildbach.wallet.util.BitmapFragment;
 import de.schildbach.wallet.util.Qr;
 import de.schildbach.wallet.util.Toast;
@@ -150,7 +151,7 @@ public final class WalletAddressesFragment extends FancyListFragment {
                 final ECKey key = getKey(position);
 
                 final String address = Address.fromKey(Constants.NETWORK_PARAMETERS, key).toString();
-                final String label = AddressBookProvider.resolveLabel(activity, address);
+                final String label = AddressBookLabelCache.getInstance(activity).resolveLabel(address);
                 mode.setTitle(label != null ? label
                         : WalletUtils.formatHash(address, Constants.ADDRESS_FORMAT_GROUP_SIZE, 0));
 
@@ -22,14 +22,16 @@ import javax.annotation.Nullable;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.utils.Fiat;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
 import org.dash.wallet.common.ui.CurrencyTextView;
 
 import org.dash.wallet.common.Configuration;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.rates.ExchangeRatesViewModel;
 import de.schildbach.wallet_test.R;
 
@@ -40,7 +42,6 @@ import android.content.Intent;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -77,7 +78,6 @@ public final class WalletBalanceFragment extends Fragment {
     @Nullable
     private de.schildbach.wallet.data.BlockchainState blockchainState = null;
 
-    private static final int ID_BALANCE_LOADER = 0;
     private static final int ID_RATE_LOADER = 1;
     private static final int ID_BLOCKCHAIN_STATE_LOADER = 2;
 
@@ -143,21 +143,29 @@ public final class WalletBalanceFragment extends Fragment {
         viewProgress = (TextView) view.findViewById(R.id.wallet_balance_progress);
         exchangeRatesViewModel = ViewModelProviders.of(this).get(ExchangeRatesViewModel.class);
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(getViewLifecycleOwner(),
+        BlockchainStateRepository.getInstance().getState().observe(getViewLifecycleOwner(),
                 new Observer<BlockchainState>() {
                     @Override
                     public void onChanged(BlockchainState blockchainState) {
                         WalletBalanceFragment.this.blockchainState = blockchainState;
                     }
                 });
+        WalletBalanceRepository.getInstance().getBalance(BalanceType.ESTIMATED).observe(getViewLifecycleOwner(),
+                new Observer<Coin>() {
+                    @Override
+                    public void onChanged(final Coin balance) {
+                        WalletBalanceFragment.this.balance = balance;
+
+                        activity.invalidateOptionsMenu();
+                        updateView();
+                    }
+                });
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
-        loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
-
         exchangeRatesViewModel.getRate(config.getExchangeCurrencyCode()).observe(this,
                 new Observer<de.schildbach.wallet.rates.ExchangeRate>() {
                     @Override
@@ -177,7 +185,6 @@ public final class WalletBalanceFragment extends Fragment {
     public void onPause() {
         loaderManager.destroyLoader(ID_BLOCKCHAIN_STATE_LOADER);
         loaderManager.destroyLoader(ID_RATE_LOADER);
-        loaderManager.destroyLoader(ID_BALANCE_LOADER);
 
         super.onPause();
     }
@@ -254,23 +261,4 @@ public final class WalletBalanceFragment extends Fragment {
             viewBalance.setVisibility(View.INVISIBLE);
         }
     }
-
-    private final LoaderManager.LoaderCallbacks<Coin> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<Coin>() {
-        @Override
-        public Loader<Coin> onCreateLoader(final int id, final Bundle args) {
-            return new WalletBalanceLoader(activity, wallet);
-        }
-
-        @Override
-        public void onLoadFinished(final Loader<Coin> loader, final Coin balance) {
-            WalletBalanceFragment.this.balance = balance;
-
-            activity.invalidateOptionsMenu();
-            updateView();
-        }
-
-        @Override
-        public void onLoaderReset(final Loader<Coin> loader) {
-        }
-    };
 }
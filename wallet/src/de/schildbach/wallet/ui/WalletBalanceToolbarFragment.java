@@ -24,8 +24,6 @@ import android.content.Intent;
 import android.os.Bundle;
 
 import androidx.fragment.app.Fragment;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.Loader;
 import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -40,6 +38,7 @@ import android.widget.Toast;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.MasternodeSync;
 import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.Wallet.BalanceType;
 import org.bitcoinj.utils.Fiat;
 import org.dash.wallet.common.ui.CurrencyTextView;
 
@@ -48,6 +47,7 @@ import javax.annotation.Nullable;
 import org.dash.wallet.common.Configuration;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.rates.ExchangeRate;
 import de.schildbach.wallet.rates.ExchangeRatesViewModel;
 import de.schildbach.wallet.util.BlockchainStateUtils;
@@ -61,7 +61,6 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 	private AbstractBindServiceActivity activity;
 	private Configuration config;
 	private Wallet wallet;
-	private LoaderManager loaderManager;
 
 	private View viewBalance;
 	private View progressView;
@@ -84,7 +83,6 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 	@Nullable
 	private int masternodeSyncStatus = MasternodeSync.MASTERNODE_SYNC_FINISHED;
 
-	private static final int ID_BALANCE_LOADER = 0;
 	private static final int ID_MASTERNODE_SYNC_LOADER = 2;
 
 	private static final long BLOCKCHAIN_UPTODATE_THRESHOLD_MS = DateUtils.HOUR_IN_MILLIS;
@@ -114,7 +112,6 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 		this.application = (WalletApplication) activity.getApplication();
 		this.config = application.getConfiguration();
 		this.wallet = application.getWallet();
-		this.loaderManager = getLoaderManager();
 
 		showLocalBalance = getResources().getBoolean(R.bool.show_local_balance);
 	}
@@ -161,15 +158,20 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 			}
 		});
 
-
+		WalletBalanceRepository.getInstance().getBalance(BalanceType.ESTIMATED).observe(getViewLifecycleOwner(),
+				new Observer<Coin>() {
+			@Override
+			public void onChanged(final Coin balance) {
+				WalletBalanceToolbarFragment.this.balance = balance;
+				updateView();
+			}
+		});
 	}
 
 	@Override
 	public void onResume() {
 		super.onResume();
 
-		loaderManager.initLoader(ID_BALANCE_LOADER, null, balanceLoaderCallbacks);
-
 		exchangeRatesViewModel.getRate(config.getExchangeCurrencyCode()).observe(this,
 				new Observer<de.schildbach.wallet.rates.ExchangeRate>() {
 			@Override
@@ -187,7 +189,6 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 	@Override
 	public void onPause()
 	{
-		loaderManager.destroyLoader(ID_BALANCE_LOADER);
 		//loaderManager.destroyLoader(ID_MASTERNODE_SYNC_LOADER);
 
 		super.onPause();
@@ -306,26 +307,4 @@ public final class WalletBalanceToolbarFragment extends Fragment {
 		Intent intent = new Intent(getActivity(), ExchangeRatesActivity.class);
 		getActivity().startActivity(intent);
 	}
-
-	private final LoaderManager.LoaderCallbacks<Coin> balanceLoaderCallbacks = new LoaderManager.LoaderCallbacks<Coin>()
-	{
-		@Override
-		public Loader<Coin> onCreateLoader(final int id, final Bundle args)
-		{
-			return new WalletBalanceLoader(activity, wallet);
-		}
-
-		@Override
-		public void onLoadFinished(final Loader<Coin> loader, final Coin balance)
-		{
-			WalletBalanceToolbarFragment.this.balance = balance;
-
-			updateView();
-		}
-
-		@Override
-		public void onLoaderReset(final Loader<Coin> loader)
-		{
-		}
-	};
 }
@@ -51,13 +51,14 @@ import androidx.loader.app.LoaderManager;
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.Transaction.Purpose;
-import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
 import org.bitcoinj.script.ScriptException;
 import org.bitcoinj.utils.Threading;
 import org.bitcoinj.wallet.Wallet;
@@ -67,11 +68,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Nullable;
@@ -79,11 +78,17 @@ import javax.annotation.Nullable;
 import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
+import de.schildbach.wallet.data.AddressBookLabelCache;
 import de.schildbach.wallet.data.AddressBookProvider;
 import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
+import de.schildbach.wallet.data.TransactionSummary;
+import de.schildbach.wallet.data.TransactionSummaryDao;
 import de.schildbach.wallet.util.BitmapFragment;
+import de.schildbach.wallet.util.BlockchainStateUtils;
 import de.schildbach.wallet.util.CrashReporter;
 import de.schildbach.wallet.util.Qr;
+import de.schildbach.wallet.util.QrRenderer;
 import de.schildbach.wallet.util.ThrottlingWalletChangeListener;
 import de.schildbach.wallet.util.WalletUtils;
 import de.schildbach.wallet_test.R;
@@ -91,7 +96,7 @@ import de.schildbach.wallet_test.R;
 /**
  * @author Andreas Schildbach
  */
-public class WalletTransactionsFragment extends Fragment implements LoaderManager.LoaderCallbacks<List<Transaction>>,
+public class WalletTransactionsFragment extends Fragment implements LoaderManager.LoaderCallbacks<WalletTransactionsFragment.TransactionsLoader.Result>,
         TransactionsAdapter.OnClickListener, OnSharedPreferenceChangeListener {
 
 
@@ -111,6 +116,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
     private View loading;
     private RecyclerView recyclerView;
     private TransactionsAdapter adapter;
+    private TransactionsIndex transactionsIndex;
     private TextView syncingText;
     private TransactionsFilterSharedViewModel transactionsFilterSharedViewModel;
 
@@ -155,9 +161,19 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         adapter = new TransactionsAdapter(activity, wallet, application.maxConnectedPeers(), this);
         adapter.setShowTransactionRowMenu(true);
 
+        transactionsIndex = new TransactionsIndex(wallet);
+        transactionsIndex.start();
+
         this.direction = null;
     }
 
+    @Override
+    public void onDestroy() {
+        transactionsIndex.stop();
+
+        super.onDestroy();
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -213,7 +229,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
             reloadTransactions();
         });
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(getViewLifecycleOwner(), new Observer<BlockchainState>() {
+        BlockchainStateRepository.getInstance().getState().observe(getViewLifecycleOwner(), new Observer<BlockchainState>() {
             @Override
             public void onChanged(de.schildbach.wallet.data.BlockchainState blockchainState) {
                 updateSyncState(blockchainState);
@@ -236,22 +252,11 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         args.putSerializable(ARG_DIRECTION, direction);
         loaderManager.initLoader(ID_TRANSACTION_LOADER, args, this);
 
-        wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, transactionChangeListener);
-        wallet.addCoinsSentEventListener(Threading.SAME_THREAD, transactionChangeListener);
-        wallet.addChangeEventListener(Threading.SAME_THREAD, transactionChangeListener);
-        wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, transactionChangeListener);
-
         updateView();
     }
 
     @Override
     public void onPause() {
-        wallet.removeTransactionConfidenceEventListener(transactionChangeListener);
-        wallet.removeChangeEventListener(transactionChangeListener);
-        wallet.removeCoinsSentEventListener(transactionChangeListener);
-        wallet.removeCoinsReceivedEventListener(transactionChangeListener);
-        transactionChangeListener.removeCallbacks();
-
         loaderManager.destroyLoader(ID_TRANSACTION_LOADER);
 
         config.unregisterOnSharedPreferenceChangeListener(this);
@@ -282,7 +287,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
                 .findItem(R.id.wallet_transactions_context_edit_address);
         if (!txRotation && txAddress != null) {
             editAddressMenuItem.setVisible(true);
-            final boolean isAdd = AddressBookProvider.resolveLabel(activity, txAddress.toBase58()) == null;
+            final boolean isAdd = AddressBookLabelCache.getInstance(activity).resolveLabel(txAddress.toBase58()) == null;
             final boolean isOwn = wallet.isPubKeyHashMine(txAddress.getHash160());
 
             if (isOwn)
@@ -329,8 +334,14 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
             }
 
             private void handleShowQr() {
-                final Bitmap qrCodeBitmap = Qr.bitmap(Qr.encodeCompressBinary(txSerialized));
-                BitmapFragment.show(getFragmentManager(), qrCodeBitmap);
+                QrRenderer.getInstance(activity).render(Qr.encodeCompressBinary(txSerialized),
+                        new QrRenderer.Callback() {
+                            @Override
+                            public void onRendered(final Bitmap qrCodeBitmap) {
+                                if (isResumed())
+                                    BitmapFragment.show(getFragmentManager(), qrCodeBitmap);
+                            }
+                        });
             }
 
             private void handleReportIssue(final Transaction tx) {
@@ -389,19 +400,20 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
     }
 
     @Override
-    public Loader<List<Transaction>> onCreateLoader(final int id, final Bundle args) {
-        return new TransactionsLoader(activity, wallet, (Direction) args.getSerializable(ARG_DIRECTION));
+    public Loader<TransactionsLoader.Result> onCreateLoader(final int id, final Bundle args) {
+        return new TransactionsLoader(activity, wallet, transactionsIndex,
+                (Direction) args.getSerializable(ARG_DIRECTION));
     }
 
     @Override
-    public void onLoadFinished(final Loader<List<Transaction>> loader, final List<Transaction> transactions) {
-        final Direction direction = ((TransactionsLoader) loader).getDirection();
-
+    public void onLoadFinished(final Loader<TransactionsLoader.Result> loader, final TransactionsLoader.Result result) {
         loading.setVisibility(View.GONE);
-        adapter.replace(transactions);
+        if (result.firstPage != null)
+            adapter.prefill(result.firstPage, result.summaries);
+        adapter.replace(result.txIds, result.previous, result.diff);
         updateView();
 
-        if (transactions.isEmpty()) {
+        if (result.txIds.isEmpty()) {
             showEmptyView();
         } else {
             showTransactionList();
@@ -430,6 +442,10 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
             int end = str.length();
             str.setSpan(new android.text.style.StyleSpan(android.graphics.Typeface.BOLD), start, end,
                     Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            String timeLeft = BlockchainStateUtils.getTimeLeftString(blockchainState, getActivity());
+            if (timeLeft != null) {
+                str.append(getString(R.string.blockchain_state_eta_appended, timeLeft));
+            }
             syncingText.setText(str);
         }
     }
@@ -445,30 +461,63 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
     }
 
     @Override
-    public void onLoaderReset(final Loader<List<Transaction>> loader) {
+    public void onLoaderReset(final Loader<TransactionsLoader.Result> loader) {
         // don't clear the adapter, because it will confuse users
     }
 
-    private final ThrottlingWalletChangeListener transactionChangeListener = new ThrottlingWalletChangeListener(
-            THROTTLE_MS) {
-        @Override
-        public void onThrottledWalletChanged() {
-            adapter.notifyDataSetChanged();
+    static class TransactionsLoader extends AsyncTaskLoader<TransactionsLoader.Result> {
+
+        /**
+         * The ids of the sorted transactions plus, if available, the range updates needed to get
+         * there from the previously loaded list.
+         */
+        static final class Result {
+            final List<Sha256Hash> txIds;
+            @Nullable
+            final List<Sha256Hash> previous;
+            @Nullable
+            final DiffUtil.DiffResult diff;
+            // both only set for the first page shown from the persisted summaries, which are keyed by transaction id
+            @Nullable
+            final List<Transaction> firstPage;
+            @Nullable
+            final Map<String, TransactionSummary> summaries;
+
+            private Result(final List<Sha256Hash> txIds, @Nullable final List<Sha256Hash> previous,
+                           @Nullable final DiffUtil.DiffResult diff, @Nullable final List<Transaction> firstPage,
+                           @Nullable final Map<String, TransactionSummary> summaries) {
+                this.txIds = txIds;
+                this.previous = previous;
+                this.diff = diff;
+                this.firstPage = firstPage;
+                this.summaries = summaries;
+            }
         }
-    };
 
-    private static class TransactionsLoader extends AsyncTaskLoader<List<Transaction>> {
+        // beyond this many changes a full rebind is cheaper than computing the diff
+        private static final int MAX_DIFF_CHANGES = 500;
+        // fills the screen while the full list is built
+        private static final int FIRST_PAGE_SIZE = 50;
 
         private LocalBroadcastManager broadcastManager;
         private final Wallet wallet;
+        private final TransactionsIndex index;
         @Nullable
         private final Direction direction;
 
-        private TransactionsLoader(final Context context, final Wallet wallet, @Nullable final Direction direction) {
+        @Nullable
+        private List<TransactionsIndex.Entry> lastEntries;
+        @Nullable
+        private List<Sha256Hash> lastTxIds;
+        private boolean firstPageLoaded = false;
+
+        private TransactionsLoader(final Context context, final Wallet wallet, final TransactionsIndex index,
+                                   @Nullable final Direction direction) {
             super(context);
 
             this.broadcastManager = LocalBroadcastManager.getInstance(context.getApplicationContext());
             this.wallet = wallet;
+            this.index = index;
             this.direction = direction;
         }
 
@@ -484,6 +533,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
             wallet.addCoinsReceivedEventListener(Threading.SAME_THREAD, transactionAddRemoveListener);
             wallet.addCoinsSentEventListener(Threading.SAME_THREAD, transactionAddRemoveListener);
             wallet.addChangeEventListener(Threading.SAME_THREAD, transactionAddRemoveListener);
+            wallet.addTransactionConfidenceEventListener(Threading.SAME_THREAD, transactionAddRemoveListener);
             broadcastManager.registerReceiver(walletChangeReceiver,
                     new IntentFilter(WalletApplication.ACTION_WALLET_REFERENCE_CHANGED));
             transactionAddRemoveListener.onReorganize(null); // trigger at least one reload
@@ -494,6 +544,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         @Override
         protected void onStopLoading() {
             broadcastManager.unregisterReceiver(walletChangeReceiver);
+            wallet.removeTransactionConfidenceEventListener(transactionAddRemoveListener);
             wallet.removeChangeEventListener(transactionAddRemoveListener);
             wallet.removeCoinsSentEventListener(transactionAddRemoveListener);
             wallet.removeCoinsReceivedEventListener(transactionAddRemoveListener);
@@ -505,6 +556,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         @Override
         protected void onReset() {
             broadcastManager.unregisterReceiver(walletChangeReceiver);
+            wallet.removeTransactionConfidenceEventListener(transactionAddRemoveListener);
             wallet.removeChangeEventListener(transactionAddRemoveListener);
             wallet.removeCoinsSentEventListener(transactionAddRemoveListener);
             wallet.removeCoinsReceivedEventListener(transactionAddRemoveListener);
@@ -514,28 +566,83 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         }
 
         @Override
-        public List<Transaction> loadInBackground() {
-            org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+        public Result loadInBackground() {
+            // the adapter resolves labels while binding on the main thread
+            AddressBookLabelCache.getInstance(getContext()).preload();
+
+            if (!firstPageLoaded && index.needsRebuild()) {
+                firstPageLoaded = true;
+                final Result firstPage = loadFirstPage();
+                if (firstPage != null)
+                    return firstPage;
+            }
+
+            final int changes = index.update();
+            final List<TransactionsIndex.Entry> entries = index.snapshot(direction);
+
+            final List<Sha256Hash> txIds = new ArrayList<Sha256Hash>(entries.size());
+            for (final TransactionsIndex.Entry entry : entries)
+                txIds.add(entry.txId);
 
-            final Set<Transaction> transactions = wallet.getTransactions(true);
-            final List<Transaction> filteredTransactions = new ArrayList<Transaction>(transactions.size());
+            DiffUtil.DiffResult diff = null;
+            if (lastEntries != null && changes != TransactionsIndex.REBUILT && changes <= MAX_DIFF_CHANGES)
+                diff = DiffUtil.calculateDiff(new EntriesDiffCallback(lastEntries, entries), false);
 
-            for (final Transaction tx : transactions) {
-                final boolean sent = tx.getValue(wallet).signum() < 0;
-                final boolean isInternal = tx.getPurpose() == Purpose.KEY_ROTATION;
+            final Result result = new Result(txIds, lastTxIds, diff, null, null);
+            lastEntries = entries;
+            lastTxIds = txIds;
+            return result;
+        }
 
-                if ((direction == Direction.RECEIVED && !sent && !isInternal) || direction == null
-                        || (direction == Direction.SENT && sent && !isInternal))
-                    filteredTransactions.add(tx);
+        /**
+         * Loads the most recent transactions from the persisted summaries, which does not depend on
+         * the size of the wallet like building the index does.
+         *
+         * @return the first page, or null if there are no summaries yet
+         */
+        @Nullable
+        private Result loadFirstPage() {
+            final TransactionSummaryDao dao = AppDatabase.getAppDatabase().transactionSummaryDao();
+            final List<TransactionSummary> latest = direction == null ? dao.loadLatest(FIRST_PAGE_SIZE)
+                    : dao.loadLatest(direction == Direction.SENT, FIRST_PAGE_SIZE);
+            final List<TransactionSummary> pendingFirst = new ArrayList<TransactionSummary>(latest.size());
+            for (final TransactionSummary summary : latest)
+                if (summary.getPending())
+                    pendingFirst.add(summary);
+            for (final TransactionSummary summary : latest)
+                if (!summary.getPending())
+                    pendingFirst.add(summary);
+
+            final List<Transaction> transactions = new ArrayList<Transaction>(pendingFirst.size());
+            final List<Sha256Hash> txIds = new ArrayList<Sha256Hash>(pendingFirst.size());
+            final Map<String, TransactionSummary> summaries = new HashMap<String, TransactionSummary>();
+            for (final TransactionSummary summary : pendingFirst) {
+                // the summaries might lag behind the wallet
+                final Transaction tx = wallet.getTransaction(Sha256Hash.wrap(summary.getTxId()));
+                if (tx != null) {
+                    transactions.add(tx);
+                    txIds.add(tx.getTxId());
+                    summaries.put(summary.getTxId(), summary);
+                }
             }
+            if (transactions.isEmpty())
+                return null;
 
-            Collections.sort(filteredTransactions, TRANSACTION_COMPARATOR);
+            log.info("showing {} transactions from the persisted summaries", transactions.size());
+            return new Result(txIds, null, null, transactions, summaries);
+        }
 
-            return filteredTransactions;
+        @Override
+        public void deliverResult(final Result result) {
+            super.deliverResult(result);
+
+            // the first page is only shown until the full list is built
+            if (result != null && result.firstPage != null && isStarted())
+                safeForceLoad();
         }
 
         private final ThrottlingWalletChangeListener transactionAddRemoveListener = new ThrottlingWalletChangeListener(
-                THROTTLE_MS, true, true, false) {
+                THROTTLE_MS) {
             @Override
             public void onThrottledWalletChanged() {
                 safeForceLoad();
@@ -545,6 +652,7 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
         private final BroadcastReceiver walletChangeReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(final Context context, final Intent intent) {
+                index.invalidate();
                 safeForceLoad();
             }
         };
@@ -557,27 +665,37 @@ public class WalletTransactionsFragment extends Fragment implements LoaderManage
             }
         }
 
-        private static final Comparator<Transaction> TRANSACTION_COMPARATOR = new Comparator<Transaction>() {
-            @Override
-            public int compare(final Transaction tx1, final Transaction tx2) {
-                final boolean pending1 = tx1.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
-                final boolean pending2 = tx2.getConfidence().getConfidenceType() == ConfidenceType.PENDING;
+        private static class EntriesDiffCallback extends DiffUtil.Callback {
+            private final List<TransactionsIndex.Entry> oldEntries;
+            private final List<TransactionsIndex.Entry> newEntries;
 
-                if (pending1 != pending2)
-                    return pending1 ? -1 : 1;
+            private EntriesDiffCallback(final List<TransactionsIndex.Entry> oldEntries,
+                                        final List<TransactionsIndex.Entry> newEntries) {
+                this.oldEntries = oldEntries;
+                this.newEntries = newEntries;
+            }
 
-                final Date updateTime1 = tx1.getUpdateTime();
-                final long time1 = updateTime1 != null ? updateTime1.getTime() : 0;
-                final Date updateTime2 = tx2.getUpdateTime();
-                final long time2 = updateTime2 != null ? updateTime2.getTime() : 0;
+            @Override
+            public int getOldListSize() {
+                return oldEntries.size();
+            }
 
-                if (time1 != time2)
-                    return time1 > time2 ? -1 : 1;
+            @Override
+            public int getNewListSize() {
+                return newEntries.size();
+            }
 
-                return tx1.getHash().compareTo(tx2.getHash());
+            @Override
+            public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
+                return oldEntries.get(oldItemPosition).txId.equals(newEntries.get(newItemPosition).txId);
             }
-        };
 
+            @Override
+            public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
+                // entries are immutable snapshots, a changed transaction always gets a new one
+                return oldEntries.get(oldItemPosition) == newEntries.get(newItemPosition);
+            }
+        }
     }
 
     @Override
@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import org.dash.wallet.common.ui.DialogBuilder;
+import de.schildbach.wallet.service.SyncMetrics;
 import de.schildbach.wallet.ui.ReportIssueDialogBuilder;
 import de.schildbach.wallet.util.CrashReporter;
 import de.schildbach.wallet.util.Qr;
@@ -56,6 +57,7 @@ public final class DiagnosticsFragment extends PreferenceFragment {
 	private static final String PREFS_KEY_REPORT_ISSUE = "report_issue";
 	private static final String PREFS_KEY_INITIATE_RESET = "initiate_reset";
 	private static final String PREFS_KEY_EXTENDED_PUBLIC_KEY = "extended_public_key";
+	private static final String PREFS_KEY_SYNC_METRICS = "sync_metrics";
 
 	private static final Logger log = LoggerFactory.getLogger(DiagnosticsFragment.class);
 
@@ -87,6 +89,9 @@ public final class DiagnosticsFragment extends PreferenceFragment {
 		} else if (PREFS_KEY_EXTENDED_PUBLIC_KEY.equals(key)) {
 			handleExtendedPublicKey();
 			return true;
+		} else if (PREFS_KEY_SYNC_METRICS.equals(key)) {
+			handleSyncMetrics();
+			return true;
 		}
 
 		return false;
@@ -108,6 +113,10 @@ public final class DiagnosticsFragment extends PreferenceFragment {
 			{
 				final StringBuilder applicationInfo = new StringBuilder();
 				CrashReporter.appendApplicationInfo(applicationInfo, application);
+				applicationInfo.append("\nStartup stages (ms): ").append(application.getStartup().getDurations())
+						.append('\n');
+				applicationInfo.append("Wallet load: ").append(application.getWalletLoader().getReport()).append('\n');
+				applicationInfo.append("\nSync statistics:\n").append(SyncMetrics.getInstance().getReport());
 				return applicationInfo;
 			}
 
@@ -150,6 +159,26 @@ public final class DiagnosticsFragment extends PreferenceFragment {
 		dialog.show();
 	}
 
+	private void handleSyncMetrics() {
+		final String report = SyncMetrics.getInstance().getReport();
+
+		final DialogBuilder dialog = new DialogBuilder(activity);
+		dialog.setTitle(R.string.preferences_sync_metrics_title);
+		dialog.setMessage(report);
+		dialog.setNegativeButton(R.string.button_dismiss, null);
+		dialog.setPositiveButton(R.string.button_share, new OnClickListener() {
+			@Override
+			public void onClick(final DialogInterface dialog, final int which) {
+				final Intent intent = new Intent(Intent.ACTION_SEND);
+				intent.setType("text/plain");
+				intent.putExtra(Intent.EXTRA_TEXT, report);
+				intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.preferences_sync_metrics_title));
+				startActivity(Intent.createChooser(intent, getString(R.string.preferences_sync_metrics_title)));
+			}
+		});
+		dialog.show();
+	}
+
     private void handleExtendedPublicKey() {
 		final DeterministicKey extendedKey = application.getWallet().getWatchingKey();
         final String xpub = String.format(Locale.US, "%s?c=%d&h=bip32",
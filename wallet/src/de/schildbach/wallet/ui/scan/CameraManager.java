@@ -27,9 +27,8 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.zxing.PlanarYUVLuminanceSource;
-
 import android.annotation.SuppressLint;
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.hardware.Camera;
@@ -163,6 +162,7 @@ public final class CameraManager {
     public void close() {
         if (camera != null) {
             try {
+                camera.setPreviewCallbackWithBuffer(null);
                 camera.stopPreview();
             } catch (final RuntimeException x) {
                 log.warn("something went wrong while stopping camera preview", x);
@@ -252,18 +252,38 @@ public final class CameraManager {
         camera.setParameters(parameters);
     }
 
-    public void requestPreviewFrame(final PreviewCallback callback) {
+    /**
+     * Delivers preview frames continuously into a fixed set of buffers. The callback must hand
+     * each buffer back via {@link #returnPreviewBuffer(byte[])}, or no more frames arrive.
+     */
+    public void startPreviewFrames(final int bufferCount, final PreviewCallback callback) {
         try {
-            camera.setOneShotPreviewCallback(callback);
+            final int previewFormat = camera.getParameters().getPreviewFormat();
+            final int bufferSize = cameraResolution.width * cameraResolution.height
+                    * ImageFormat.getBitsPerPixel(previewFormat) / 8;
+            for (int i = 0; i < bufferCount; i++)
+                camera.addCallbackBuffer(new byte[bufferSize]);
+            camera.setPreviewCallbackWithBuffer(callback);
         } catch (final RuntimeException x) {
-            log.warn("problem requesting preview frame, callback won't be called", x);
+            log.warn("problem requesting preview frames, callback won't be called", x);
         }
     }
 
-    public PlanarYUVLuminanceSource buildLuminanceSource(final byte[] data) {
-        return new PlanarYUVLuminanceSource(data, cameraResolution.width, cameraResolution.height,
-                (int) framePreview.left, (int) framePreview.top, (int) framePreview.width(),
-                (int) framePreview.height(), false);
+    public void returnPreviewBuffer(final byte[] buffer) {
+        if (camera != null)
+            camera.addCallbackBuffer(buffer);
+    }
+
+    public int getPreviewWidth() {
+        return cameraResolution.width;
+    }
+
+    /**
+     * @return the part of the preview frames that is inside the scanner frame
+     */
+    public Rect getFramePreviewCrop() {
+        return new Rect((int) framePreview.left, (int) framePreview.top, (int) framePreview.left
+                + (int) framePreview.width(), (int) framePreview.top + (int) framePreview.height());
     }
 
     public void setTorch(final boolean enabled) {
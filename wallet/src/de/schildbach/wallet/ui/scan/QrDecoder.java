@@ -0,0 +1,246 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.ui.scan;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes QR codes from camera preview frames on a small pool of worker threads. Only the part of
+ * the frame inside the scanner frame is copied, into one of a fixed set of buffers, so the camera
+ * gets its preview buffer back right away. If all workers are busy, the newest frame waits and
+ * replaces any older frame that is still waiting; older frames are dropped.
+ *
+ * Every other frame of a worker is tried inverted, for light-on-dark codes.
+ */
+final class QrDecoder {
+
+    interface Listener {
+        /**
+         * Called at most once, on a worker thread.
+         */
+        void onResult(Result result);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(QrDecoder.class);
+
+    private final int width;
+    private final int height;
+    private final Listener listener;
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Frame> freeFrames;
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    private final ThreadLocal<QRCodeReader> reader = new ThreadLocal<QRCodeReader>() {
+        @Override
+        protected QRCodeReader initialValue() {
+            return new QRCodeReader();
+        }
+    };
+
+    // metrics
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private final AtomicInteger framesOffered = new AtomicInteger();
+    private final AtomicInteger framesDecoded = new AtomicInteger();
+    private final AtomicInteger framesDropped = new AtomicInteger();
+    private final AtomicLong decodeMsTotal = new AtomicLong();
+    private volatile long resultAfterMs = -1;
+
+    /**
+     * @param width  width of the region of interest in the preview frame
+     * @param height height of the region of interest in the preview frame
+     */
+    QrDecoder(final int width, final int height, final ResultPointCallback dotCallback, final Listener listener) {
+        this.width = width;
+        this.height = height;
+        this.listener = listener;
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, dotCallback);
+
+        final int workers = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2));
+        // one frame per worker plus the one waiting
+        freeFrames = new ArrayBlockingQueue<>(workers + 1);
+        for (int i = 0; i < workers + 1; i++)
+            freeFrames.add(new Frame(width, height));
+
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(workers), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+                                runnable.run();
+                            }
+                        }, "qrDecoder-" + count.incrementAndGet());
+                    }
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        log.info("decoding {}x{} with {} workers", width, height, workers);
+    }
+
+    /**
+     * Copies the region of interest out of a preview frame and queues it for decoding. Returns
+     * quickly, so the caller can hand the preview buffer back to the camera.
+     *
+     * @param data      the preview frame, luminance plane first
+     * @param dataWidth the width of the preview frame
+     * @param left      left edge of the region of interest
+     * @param top       top edge of the region of interest
+     */
+    void offer(final byte[] data, final int dataWidth, final int left, final int top) {
+        if (done.get())
+            return;
+        framesOffered.incrementAndGet();
+
+        final Frame frame = freeFrames.poll();
+        if (frame == null) {
+            framesDropped.incrementAndGet();
+            return;
+        }
+        for (int y = 0; y < height; y++)
+            System.arraycopy(data, (top + y) * dataWidth + left, frame.luminance, y * width, width);
+        frame.capturedAt = SystemClock.elapsedRealtime();
+
+        final Frame replaced = pendingFrame.getAndSet(frame);
+        if (replaced != null) {
+            framesDropped.incrementAndGet();
+            freeFrames.offer(replaced);
+        }
+        executor.execute(decodeRunnable);
+    }
+
+    private final Runnable decodeRunnable = new Runnable() {
+        private final ThreadLocal<boolean[]> invertNext = new ThreadLocal<boolean[]>() {
+            @Override
+            protected boolean[] initialValue() {
+                return new boolean[1];
+            }
+        };
+
+        @Override
+        public void run() {
+            final Frame frame = pendingFrame.getAndSet(null);
+            if (frame == null)
+                return;
+            try {
+                if (done.get())
+                    return;
+
+                final boolean[] invert = invertNext.get();
+                if (invert[0])
+                    frame.invert();
+                invert[0] = !invert[0];
+
+                final QRCodeReader reader = QrDecoder.this.reader.get();
+                final long start = SystemClock.elapsedRealtime();
+                try {
+                    final Result result = reader.decode(new BinaryBitmap(new HybridBinarizer(frame)), hints);
+                    if (done.compareAndSet(false, true)) {
+                        resultAfterMs = SystemClock.elapsedRealtime() - startedAt;
+                        log.info("decoded after {} ms, frame was {} ms old", resultAfterMs,
+                                SystemClock.elapsedRealtime() - frame.capturedAt);
+                        listener.onResult(result);
+                    }
+                } catch (final ReaderException x) {
+                    // try the next frame
+                } finally {
+                    reader.reset();
+                    decodeMsTotal.addAndGet(SystemClock.elapsedRealtime() - start);
+                    framesDecoded.incrementAndGet();
+                }
+            } finally {
+                freeFrames.offer(frame);
+            }
+        }
+    };
+
+    void shutdown() {
+        done.set(true);
+        executor.shutdownNow();
+        log.info("{}", getReport());
+    }
+
+    String getReport() {
+        final int decoded = framesDecoded.get();
+        return String.format(Locale.US,
+                "qr scan: %d frames offered, %d decoded, %d dropped, average decode %d ms, result after %d ms",
+                framesOffered.get(), decoded, framesDropped.get(), decoded > 0 ? decodeMsTotal.get() / decoded : 0,
+                resultAfterMs);
+    }
+
+    /**
+     * A reusable luminance buffer, handed to the binarizer without copying.
+     */
+    private static final class Frame extends LuminanceSource {
+        private final byte[] luminance;
+        private long capturedAt;
+
+        private Frame(final int width, final int height) {
+            super(width, height);
+            luminance = new byte[width * height];
+        }
+
+        private void invert() {
+            for (int i = 0; i < luminance.length; i++)
+                luminance[i] = (byte) ~luminance[i];
+        }
+
+        @Override
+        public byte[] getRow(final int y, byte[] row) {
+            final int width = getWidth();
+            if (row == null || row.length < width)
+                row = new byte[width];
+            System.arraycopy(luminance, y * width, row, 0, width);
+            return row;
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return luminance;
+        }
+    }
+}
@@ -17,8 +17,8 @@
 
 package de.schildbach.wallet.ui.scan;
 
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.annotation.Nullable;
 
@@ -26,16 +26,9 @@ import org.dash.wallet.common.ui.DialogBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.DecodeHintType;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
 
 import de.schildbach.wallet.ui.AbstractWalletActivity;
 import de.schildbach.wallet.util.OnFirstPreDraw;
@@ -121,6 +114,8 @@ public final class ScanActivity extends AbstractWalletActivity
 
     private static final long VIBRATE_DURATION = 50L;
     private static final long AUTO_FOCUS_INTERVAL_MS = 2500L;
+    private static final long DOT_UPDATE_INTERVAL_MS = 50L;
+    private static final int PREVIEW_BUFFERS = 2;
 
     private final CameraManager cameraManager = new CameraManager();
 
@@ -134,6 +129,10 @@ public final class ScanActivity extends AbstractWalletActivity
     private Vibrator vibrator;
     private HandlerThread cameraThread;
     private volatile Handler cameraHandler;
+    // only accessed on cameraThread
+    @Nullable
+    private QrDecoder decoder;
+    private final List<ResultPoint> pendingDots = new ArrayList<ResultPoint>();
 
     private ScanViewModel viewModel;
 
@@ -380,13 +379,39 @@ public final class ScanActivity extends AbstractWalletActivity
                         maybeTriggerSceneTransition();
                     }
                 });
-                cameraHandler.post(fetchAndDecodeRunnable);
+                startDecoding();
             } catch (final Exception x) {
                 log.info("problem opening camera", x);
                 viewModel.showProblemWarnDialog.postCall();
             }
         }
 
+        private void startDecoding() {
+            final Rect crop = cameraManager.getFramePreviewCrop();
+            final int previewWidth = cameraManager.getPreviewWidth();
+            final QrDecoder decoder = new QrDecoder(crop.width(), crop.height(), dotCallback,
+                    new QrDecoder.Listener() {
+                        @Override
+                        public void onResult(final Result result) {
+                            runOnUiThread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    handleResult(result);
+                                }
+                            });
+                        }
+                    });
+            ScanActivity.this.decoder = decoder;
+
+            cameraManager.startPreviewFrames(PREVIEW_BUFFERS, new PreviewCallback() {
+                @Override
+                public void onPreviewFrame(final byte[] data, final Camera camera) {
+                    decoder.offer(data, previewWidth, crop.left, crop.top);
+                    cameraManager.returnPreviewBuffer(data);
+                }
+            });
+        }
+
         private int displayRotation() {
             final int rotation = getWindowManager().getDefaultDisplay().getRotation();
             if (rotation == Surface.ROTATION_0)
@@ -406,6 +431,10 @@ public final class ScanActivity extends AbstractWalletActivity
         @Override
         public void run() {
             cameraHandler.removeCallbacksAndMessages(null);
+            if (decoder != null) {
+                decoder.shutdown();
+                decoder = null;
+            }
             cameraManager.close();
         }
     };
@@ -435,56 +464,29 @@ public final class ScanActivity extends AbstractWalletActivity
         };
     }
 
-    private final Runnable fetchAndDecodeRunnable = new Runnable() {
-        private final QRCodeReader reader = new QRCodeReader();
-        private final Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
-
+    private final ResultPointCallback dotCallback = new ResultPointCallback() {
         @Override
-        public void run() {
-            cameraManager.requestPreviewFrame(new PreviewCallback() {
-                @Override
-                public void onPreviewFrame(final byte[] data, final Camera camera) {
-                    decode(data);
-                }
-            });
+        public void foundPossibleResultPoint(final ResultPoint dot) {
+            // collected and handed to the view in batches, workers find many dots per second
+            final boolean schedule;
+            synchronized (pendingDots) {
+                schedule = pendingDots.isEmpty();
+                pendingDots.add(dot);
+            }
+            if (schedule)
+                scannerView.postDelayed(flushDotsRunnable, DOT_UPDATE_INTERVAL_MS);
         }
+    };
 
-        private void decode(final byte[] data) {
-            final PlanarYUVLuminanceSource source = cameraManager.buildLuminanceSource(data);
-            final BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-
-            try {
-                hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback() {
-                    @Override
-                    public void foundPossibleResultPoint(final ResultPoint dot) {
-                        runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                scannerView.addDot(dot);
-                            }
-                        });
-                    }
-                });
-                try {
-                    final Result scanResult = reader.decode(bitmap, hints);
-
-                    runOnUiThread(() -> handleResult(scanResult));
-                } catch (ReaderException x) {
-                    // Invert and check for a code
-                    LuminanceSource invertedSource = source.invert();
-                    BinaryBitmap invertedBitmap = new BinaryBitmap(new HybridBinarizer(invertedSource));
-
-                    final Result invertedScanResult = reader.decode(invertedBitmap, hints);
-
-                    runOnUiThread(() -> handleResult(invertedScanResult));
-                }
-
-            } catch (final ReaderException x) {
-                // retry
-                cameraHandler.post(fetchAndDecodeRunnable);
-            } finally {
-                reader.reset();
+    private final Runnable flushDotsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final List<ResultPoint> dots;
+            synchronized (pendingDots) {
+                dots = new ArrayList<ResultPoint>(pendingDots);
+                pendingDots.clear();
             }
+            scannerView.addDots(dots);
         }
     };
 
@@ -17,6 +17,7 @@
 
 package de.schildbach.wallet.ui.scan;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -97,8 +98,10 @@ public class ScannerView extends View {
         invalidate();
     }
 
-    public void addDot(final ResultPoint dot) {
-        dots.put(new float[] { dot.getX(), dot.getY() }, System.currentTimeMillis());
+    public void addDots(final Collection<ResultPoint> newDots) {
+        final long now = System.currentTimeMillis();
+        for (final ResultPoint dot : newDots)
+            dots.put(new float[] { dot.getX(), dot.getY() }, now);
 
         invalidate();
     }
@@ -26,14 +26,27 @@ import java.net.Socket;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
 import javax.net.SocketFactory;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -70,6 +83,7 @@ import de.schildbach.wallet_test.R;
 import android.content.res.AssetManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import okhttp3.Call;
 import okhttp3.Request;
@@ -88,6 +102,14 @@ public final class RequestWalletBalanceTask {
 
 	private static final Logger log = LoggerFactory.getLogger(RequestWalletBalanceTask.class);
 
+	private static final int ELECTRUM_SERVERS_PER_REQUEST = 3;
+	private static final int INITIAL_SOURCES = 2;
+	private static final int EMPTY_RESULT_QUORUM = 2;
+	private static final long HEDGE_DELAY_MS = 1500;
+	private static final long RACE_TIMEOUT_MS = 30000;
+	private static final long UNKNOWN_LATENCY_MS = 2000;
+	private static final long FAILURE_PENALTY_MS = 5000;
+
 	public interface ResultCallback {
 		void onResult(Set<UTXO> utxos);
 
@@ -132,82 +154,318 @@ public final class RequestWalletBalanceTask {
 			public void run() {
 				org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
 
+				final List<UtxoSource> sources = new ArrayList<>();
 				try {
 					final List<ElectrumServer> servers = loadElectrumServers(
 							assets.open(Constants.Files.ELECTRUM_SERVERS_FILENAME));
-					final ElectrumServer server = servers.get(new Random().nextInt(servers.size()));
-					log.info("trying to request wallet balance from {}: {}", server.socketAddress, address);
-					final Socket socket;
-					if (server.type == ElectrumServer.Type.TLS) {
-						final SocketFactory sf = sslTrustAllCertificates();
-						socket = sf.createSocket(server.socketAddress.getHostName(), server.socketAddress.getPort());
-						final SSLSession sslSession = ((SSLSocket) socket).getSession();
-						final Certificate certificate = sslSession.getPeerCertificates()[0];
-						final String certificateFingerprint = sslCertificateFingerprint(certificate);
-						if (server.certificateFingerprint == null) {
-							// signed by CA
-							if (!HttpsURLConnection.getDefaultHostnameVerifier()
-									.verify(server.socketAddress.getHostName(), sslSession))
-								throw new SSLHandshakeException("Expected " + server.socketAddress.getHostName()
-										+ ", got " + sslSession.getPeerPrincipal());
-						} else {
-							// self-signed
-							if (!certificateFingerprint.equals(server.certificateFingerprint))
-								throw new SSLHandshakeException("Expected " + server.certificateFingerprint + ", got "
-										+ certificateFingerprint);
-						}
-					} else if (server.type == ElectrumServer.Type.TCP) {
-						socket = new Socket();
-						socket.connect(server.socketAddress, 5000);
-					} else {
-						throw new IllegalStateException("Cannot handle: " + server.type);
-					}
-					final BufferedSink sink = Okio.buffer(Okio.sink(socket));
-					sink.timeout().timeout(5000, TimeUnit.MILLISECONDS);
-					final BufferedSource source = Okio.buffer(Okio.source(socket));
-					source.timeout().timeout(5000, TimeUnit.MILLISECONDS);
-					final Moshi moshi = new Moshi.Builder().build();
-					final JsonAdapter<JsonRpcRequest> requestAdapter = moshi.adapter(JsonRpcRequest.class);
-					final JsonRpcRequest request = new JsonRpcRequest("blockchain.address.listunspent",
-							new String[] { address.toString() });
-					requestAdapter.toJson(sink, request);
-					sink.writeUtf8("\n").flush();
-					final JsonAdapter<JsonRpcResponse> responseAdapter = moshi.adapter(JsonRpcResponse.class);
-					final JsonRpcResponse response = responseAdapter.fromJson(source);
-					if (response.id == request.id) {
-						final Set<UTXO> utxos = new HashSet<>();
-						for (final JsonRpcResponse.Utxo responseUtxo : response.result) {
-							if (response.result == null)
-								throw new JsonDataException("empty response");
-							final Sha256Hash utxoHash = Sha256Hash.wrap(responseUtxo.tx_hash);
-							final int utxoIndex = responseUtxo.tx_pos;
-							final Coin utxoValue = Coin.valueOf(responseUtxo.value);
-							final Script script = ScriptBuilder.createOutputScript(address);
-							final UTXO utxo = new UTXO(utxoHash, utxoIndex, utxoValue, responseUtxo.height, false,
-									script);
-							utxos.add(utxo);
-						}
-
-						log.info("fetched {} unspent outputs from {}", response.result.length, server.socketAddress);
-						onResult(utxos);
-					} else {
-						log.info("id mismatch response:{} vs request:{}", response.id, request.id);
-						if(!requestWalletBalanceFromBlockExplorers(address))
-							onFail(R.string.error_parse, server.socketAddress.toString());
-					}
-				} catch (final JsonDataException x) {
-					log.info("problem parsing json", x);
-					if(!requestWalletBalanceFromBlockExplorers(address))
-						onFail(R.string.error_parse, x.getMessage());
+					Collections.shuffle(servers);
+					for (final ElectrumServer server : servers.subList(0,
+							Math.min(ELECTRUM_SERVERS_PER_REQUEST, servers.size())))
+						sources.add(new ElectrumSource(server, address));
 				} catch (final IOException x) {
-					log.info("problem querying unspent outputs", x);
-					if(!requestWalletBalanceFromBlockExplorers(address))
-						onFail(R.string.error_io, x.getMessage());
+					log.info("problem loading electrum servers", x);
 				}
+				sources.add(new BlockExplorerSource("https://insight.dash.org/api/addr/", UnspentAPI.Insight, address));
+				sources.add(new BlockExplorerSource("https://explorer.dash.org/chain/Dash/unspent/", UnspentAPI.ABE, address));
+				sources.add(new BlockExplorerSource("https://chainz.cryptoid.info/dash/api.dws?q=unspent", UnspentAPI.CryptoId, address));
+
+				// sources that answered quickly before are asked first
+				Collections.sort(sources, SOURCE_RANK_COMPARATOR);
+
+				race(sources);
 			}
 		});
 	}
 
+	/**
+	 * Queries the given sources concurrently. The fastest sources are started right away, the
+	 * others are started whenever a source fails or has not answered within {@link #HEDGE_DELAY_MS}.
+	 * The first non-empty result wins and all other requests are cancelled. An empty result is
+	 * only accepted once a second source confirms it, as a lagging backend could report
+	 * nothing for an address that actually has funds.
+	 */
+	private void race(final List<UtxoSource> sources) {
+		final ExecutorService executor = Executors.newFixedThreadPool(sources.size());
+		final CompletionService<SourceResult> completionService = new ExecutorCompletionService<>(executor);
+		final long deadline = SystemClock.elapsedRealtime() + RACE_TIMEOUT_MS;
+		int submitted = 0;
+		int finished = 0;
+		int emptyResults = 0;
+		String lastError = null;
+
+		try {
+			while (submitted < Math.min(INITIAL_SOURCES, sources.size()))
+				completionService.submit(sources.get(submitted++));
+
+			while (finished < submitted) {
+				final long remaining = deadline - SystemClock.elapsedRealtime();
+				if (remaining <= 0)
+					break;
+
+				final Future<SourceResult> future = completionService.poll(Math.min(remaining, HEDGE_DELAY_MS),
+						TimeUnit.MILLISECONDS);
+				if (future == null) {
+					// nobody answered yet, hedge with the next source
+					if (submitted < sources.size())
+						completionService.submit(sources.get(submitted++));
+					continue;
+				}
+				finished++;
+
+				final SourceResult result;
+				try {
+					result = future.get();
+				} catch (final ExecutionException x) {
+					log.info("problem querying unspent outputs", x);
+					lastError = x.getCause().getMessage();
+					if (submitted < sources.size())
+						completionService.submit(sources.get(submitted++));
+					continue;
+				}
+				if (result.utxos == null) {
+					lastError = result.error;
+				} else if (!result.utxos.isEmpty()) {
+					log.info("using {} unspent outputs from {}", result.utxos.size(), result.source.name);
+					onResult(result.utxos);
+					return;
+				} else if (++emptyResults >= EMPTY_RESULT_QUORUM) {
+					onResult(result.utxos);
+					return;
+				}
+
+				if (submitted < sources.size())
+					completionService.submit(sources.get(submitted++));
+			}
+
+			if (emptyResults > 0) {
+				// the only answer we got was empty, so trust it
+				onResult(new HashSet<UTXO>());
+			} else {
+				log.info("no source returned unspent outputs, last error: {}", lastError);
+				onFail(R.string.error_io, lastError != null ? lastError
+						: "cannot connect to any server for unspent outputs");
+			}
+		} catch (final InterruptedException x) {
+			Thread.currentThread().interrupt();
+			onFail(R.string.error_io, x.getMessage());
+		} finally {
+			for (final UtxoSource source : sources)
+				source.cancel();
+			executor.shutdownNow();
+		}
+	}
+
+	private static final class SourceResult {
+		public final UtxoSource source;
+		@Nullable
+		public final Set<UTXO> utxos;
+		@Nullable
+		public final String error;
+
+		private SourceResult(final UtxoSource source, @Nullable final Set<UTXO> utxos, @Nullable final String error) {
+			this.source = source;
+			this.utxos = utxos;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * A backend that can list unspent outputs. Records its latency so that slow or failing
+	 * backends are asked last next time.
+	 */
+	private abstract static class UtxoSource implements Callable<SourceResult> {
+		public final String name;
+		private volatile boolean cancelled = false;
+
+		protected UtxoSource(final String name) {
+			this.name = name;
+		}
+
+		protected abstract Set<UTXO> fetch() throws IOException, JsonDataException, JSONException;
+
+		protected abstract void abort();
+
+		public void cancel() {
+			cancelled = true;
+			abort();
+		}
+
+		@Override
+		public SourceResult call() {
+			org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+			final long start = SystemClock.elapsedRealtime();
+			try {
+				final Set<UTXO> utxos = fetch();
+				final long latency = SystemClock.elapsedRealtime() - start;
+				SourceStats.forSource(name).recordSuccess(latency);
+				log.info("fetched {} unspent outputs from {}, took {} ms", utxos.size(), name, latency);
+				return new SourceResult(this, utxos, null);
+			} catch (final IOException | JsonDataException | JSONException x) {
+				if (!cancelled) {
+					SourceStats.forSource(name).recordFailure();
+					log.info("problem querying unspent outputs from " + name, x);
+				}
+				return new SourceResult(this, null, x.getMessage());
+			}
+		}
+	}
+
+	private static final class SourceStats {
+		private static final Map<String, SourceStats> STATS = new HashMap<>();
+
+		// exponentially weighted moving average, unknown sources rank in the middle
+		private long latencyMs = UNKNOWN_LATENCY_MS;
+		private int failures = 0;
+
+		public static synchronized SourceStats forSource(final String name) {
+			SourceStats stats = STATS.get(name);
+			if (stats == null) {
+				stats = new SourceStats();
+				STATS.put(name, stats);
+			}
+			return stats;
+		}
+
+		public synchronized void recordSuccess(final long latency) {
+			latencyMs = (latencyMs * 3 + latency) / 4;
+			failures = 0;
+		}
+
+		public synchronized void recordFailure() {
+			failures++;
+		}
+
+		public synchronized long rank() {
+			return latencyMs + failures * FAILURE_PENALTY_MS;
+		}
+	}
+
+	private static final Comparator<UtxoSource> SOURCE_RANK_COMPARATOR = new Comparator<UtxoSource>() {
+		@Override
+		public int compare(final UtxoSource source1, final UtxoSource source2) {
+			return Long.compare(SourceStats.forSource(source1.name).rank(),
+					SourceStats.forSource(source2.name).rank());
+		}
+	};
+
+	private final class ElectrumSource extends UtxoSource {
+		private final ElectrumServer server;
+		private final Address address;
+		private volatile Socket socket;
+
+		private ElectrumSource(final ElectrumServer server, final Address address) {
+			super(server.socketAddress.toString());
+			this.server = server;
+			this.address = address;
+		}
+
+		@Override
+		protected Set<UTXO> fetch() throws IOException, JsonDataException {
+			log.info("trying to request wallet balance from {}: {}", server.socketAddress, address);
+			if (server.type == ElectrumServer.Type.TLS) {
+				final SocketFactory sf = sslTrustAllCertificates();
+				socket = sf.createSocket(server.socketAddress.getHostName(), server.socketAddress.getPort());
+				final SSLSession sslSession = ((SSLSocket) socket).getSession();
+				final Certificate certificate = sslSession.getPeerCertificates()[0];
+				final String certificateFingerprint = sslCertificateFingerprint(certificate);
+				if (server.certificateFingerprint == null) {
+					// signed by CA
+					if (!HttpsURLConnection.getDefaultHostnameVerifier()
+							.verify(server.socketAddress.getHostName(), sslSession))
+						throw new SSLHandshakeException("Expected " + server.socketAddress.getHostName()
+								+ ", got " + sslSession.getPeerPrincipal());
+				} else {
+					// self-signed
+					if (!certificateFingerprint.equals(server.certificateFingerprint))
+						throw new SSLHandshakeException("Expected " + server.certificateFingerprint + ", got "
+								+ certificateFingerprint);
+				}
+			} else if (server.type == ElectrumServer.Type.TCP) {
+				socket = new Socket();
+				socket.connect(server.socketAddress, 5000);
+			} else {
+				throw new IllegalStateException("Cannot handle: " + server.type);
+			}
+			try {
+				final BufferedSink sink = Okio.buffer(Okio.sink(socket));
+				sink.timeout().timeout(5000, TimeUnit.MILLISECONDS);
+				final BufferedSource source = Okio.buffer(Okio.source(socket));
+				source.timeout().timeout(5000, TimeUnit.MILLISECONDS);
+				final Moshi moshi = new Moshi.Builder().build();
+				final JsonAdapter<JsonRpcRequest> requestAdapter = moshi.adapter(JsonRpcRequest.class);
+				final JsonRpcRequest request = new JsonRpcRequest("blockchain.address.listunspent",
+						new String[] { address.toString() });
+				requestAdapter.toJson(sink, request);
+				sink.writeUtf8("\n").flush();
+				final JsonAdapter<JsonRpcResponse> responseAdapter = moshi.adapter(JsonRpcResponse.class);
+				final JsonRpcResponse response = responseAdapter.fromJson(source);
+				if (response.id != request.id)
+					throw new JsonDataException("id mismatch response:" + response.id + " vs request:" + request.id);
+				if (response.result == null)
+					throw new JsonDataException("empty response");
+
+				final Set<UTXO> utxos = new HashSet<>();
+				final Script script = ScriptBuilder.createOutputScript(address);
+				for (final JsonRpcResponse.Utxo responseUtxo : response.result) {
+					final Sha256Hash utxoHash = Sha256Hash.wrap(responseUtxo.tx_hash);
+					final int utxoIndex = responseUtxo.tx_pos;
+					final Coin utxoValue = Coin.valueOf(responseUtxo.value);
+					utxos.add(new UTXO(utxoHash, utxoIndex, utxoValue, responseUtxo.height, false, script));
+				}
+				return utxos;
+			} finally {
+				socket.close();
+			}
+		}
+
+		@Override
+		protected void abort() {
+			final Socket socket = this.socket;
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (final IOException x) {
+					// swallow
+				}
+			}
+		}
+	}
+
+	private final class BlockExplorerSource extends UtxoSource {
+		private final String blockExplorerUrl;
+		private final UnspentAPI unspentAPI;
+		private final Address address;
+		private volatile Call call;
+
+		private BlockExplorerSource(final String blockExplorerUrl, final UnspentAPI unspentAPI,
+				final Address address) {
+			super(unspentAPI.name());
+			this.blockExplorerUrl = blockExplorerUrl;
+			this.unspentAPI = unspentAPI;
+			this.address = address;
+		}
+
+		@Override
+		protected Set<UTXO> fetch() throws IOException, JSONException {
+			final Request request = new Request.Builder()
+					.url(blockExplorerUrl(blockExplorerUrl, unspentAPI, address))
+					.header("User-Agent", Constants.USER_AGENT)
+					.build();
+			call = Constants.HTTP_CLIENT.newCall(request);
+			final Response response = call.execute();
+			if (!response.isSuccessful())
+				throw new IOException("got http error '" + response.code() + ": " + response.message() + "'");
+			return parseBlockExplorerResponse(response.body().string(), unspentAPI, address);
+		}
+
+		@Override
+		protected void abort() {
+			final Call call = this.call;
+			if (call != null)
+				call.cancel();
+		}
+	}
+
 	protected void onResult(final Set<UTXO> utxos) {
 		callbackHandler.post(new Runnable() {
 			@Override
@@ -326,32 +584,8 @@ public final class RequestWalletBalanceTask {
 		Insight
 	}
 
-	boolean requestWalletBalanceFromBlockExplorers(Address address) {
-		Set<UTXO> utxos = requestWalletBalanceFromBlockExplorer("https://insight.dash.org/api/addr/", UnspentAPI.Insight, address);
-
-		if(utxos != null) {
-			onResult(utxos);
-			return true;
-		} else {
-			utxos = requestWalletBalanceFromBlockExplorer("https://explorer.dash.org/chain/Dash/unspent/", UnspentAPI.ABE, address);
-			if(utxos != null) {
-				onResult(utxos);
-				return true;
-			} else {
-				utxos = requestWalletBalanceFromBlockExplorer("https://chainz.cryptoid.info/dash/api.dws?q=unspent", UnspentAPI.CryptoId, address);
-				if(utxos != null) {
-					onResult(utxos);
-					return true;
-				}
-			}
-		}
-		onFail(R.string.error_io, "cannot connect to any block explorer for unspent outputs");
-		return false;
-	}
-
-
-	Set<UTXO> requestWalletBalanceFromBlockExplorer(String blockExplorerUrl, UnspentAPI unspentAPI, Address address) {
-
+	private static String blockExplorerUrl(final String blockExplorerUrl, final UnspentAPI unspentAPI,
+			final Address address) {
 		final StringBuilder url = new StringBuilder(blockExplorerUrl);
 		if(unspentAPI == UnspentAPI.CryptoId)
 		{
@@ -364,89 +598,61 @@ public final class RequestWalletBalanceTask {
 			url.append("/utxo");
 		}
 		log.debug("trying to request wallet balance from {}", url);
+		return url.toString();
+	}
 
-		final Request request = new Request.Builder()
-				.url(url.toString())
-				.header("User-Agent", Constants.USER_AGENT)
-				.build();
-
-		final Call call = Constants.HTTP_CLIENT.newCall(request);
+	private static Set<UTXO> parseBlockExplorerResponse(final String content, final UnspentAPI unspentAPI,
+			final Address address) throws JSONException {
+		JSONArray outputs = null;
 
-		try
+		if(unspentAPI == UnspentAPI.CryptoId)
 		{
-			final Response response = call.execute();
-
-			if(response.isSuccessful())
-			{
-				final String content = response.body().string();
-				JSONArray outputs = null;
-
-				if(unspentAPI == UnspentAPI.CryptoId)
-				{
-					JSONObject head = new JSONObject(content);
-					outputs = head.getJSONArray("unspent_outputs");
-				} else if(unspentAPI == UnspentAPI.ABE) {
-					if(content.startsWith("No free outputs to spend"))
-						return null;
-					JSONObject head = new JSONObject(content);
-					outputs = head.getJSONArray("unspent_outputs");
-				} else if(unspentAPI == UnspentAPI.Insight) {
-					outputs = new JSONArray(content);
-				}
-
-				final Set<UTXO> utxos = new HashSet<>();
+			JSONObject head = new JSONObject(content);
+			outputs = head.getJSONArray("unspent_outputs");
+		} else if(unspentAPI == UnspentAPI.ABE) {
+			if(content.startsWith("No free outputs to spend"))
+				return new HashSet<>();
+			JSONObject head = new JSONObject(content);
+			outputs = head.getJSONArray("unspent_outputs");
+		} else if(unspentAPI == UnspentAPI.Insight) {
+			outputs = new JSONArray(content);
+		}
 
-				for (int i = 0; i < outputs.length(); i++)
-				{
-					final JSONObject jsonOutput = outputs.getJSONObject(i);
-
-					Sha256Hash hash = null;
-					int index = 0;
-					byte[] scryptBytes = null;
-					Coin value = null;
-					int blockNumber = 0;
-
-					if(unspentAPI == UnspentAPI.ABE) {
-						hash = Sha256Hash.wrap(jsonOutput.getString("tx_hash"));
-						index = jsonOutput.getInt("tx_output_n");
-						scryptBytes = HEX.decode(jsonOutput.getString("script"));
-						value = Coin.valueOf(jsonOutput.getLong("value"));
-						blockNumber = jsonOutput.getInt("block_number");
-					}
-					else if(unspentAPI == UnspentAPI.CryptoId) {
-						hash = Sha256Hash.wrap(jsonOutput.getString("tx_hash"));
-						index = jsonOutput.getInt("tx_ouput_n"); //yes, output is spelled as "ouput"
-						scryptBytes = ScriptBuilder.createOutputScript(address).getProgram();
-						value = Coin.valueOf(jsonOutput.getLong("value"));
-					} else if(unspentAPI == UnspentAPI.Insight) {
-						if(jsonOutput.has("height")) //unconfirmed
-							blockNumber = jsonOutput.getInt("height");
-						hash = Sha256Hash.wrap(jsonOutput.getString("txid"));
-						index = jsonOutput.getInt("vout");
-						scryptBytes = HEX.decode(jsonOutput.getString("scriptPubKey"));
-						value = Coin.valueOf(jsonOutput.getLong("satoshis"));
-					}
-					utxos.add(new UTXO(hash, index, value, blockNumber, false, new Script(scryptBytes), address.toString()));
-				}
+		final Set<UTXO> utxos = new HashSet<>();
 
-				log.info("fetched unspent outputs from {}", url);
-				return utxos;
+		for (int i = 0; i < outputs.length(); i++)
+		{
+			final JSONObject jsonOutput = outputs.getJSONObject(i);
+
+			Sha256Hash hash = null;
+			int index = 0;
+			byte[] scryptBytes = null;
+			Coin value = null;
+			int blockNumber = 0;
+
+			if(unspentAPI == UnspentAPI.ABE) {
+				hash = Sha256Hash.wrap(jsonOutput.getString("tx_hash"));
+				index = jsonOutput.getInt("tx_output_n");
+				scryptBytes = HEX.decode(jsonOutput.getString("script"));
+				value = Coin.valueOf(jsonOutput.getLong("value"));
+				blockNumber = jsonOutput.getInt("block_number");
 			}
-			else
-			{
-				log.info("got http error '{}: {}' from {}", response.code(), response.message(), url);
-				return null;
+			else if(unspentAPI == UnspentAPI.CryptoId) {
+				hash = Sha256Hash.wrap(jsonOutput.getString("tx_hash"));
+				index = jsonOutput.getInt("tx_ouput_n"); //yes, output is spelled as "ouput"
+				scryptBytes = ScriptBuilder.createOutputScript(address).getProgram();
+				value = Coin.valueOf(jsonOutput.getLong("value"));
+			} else if(unspentAPI == UnspentAPI.Insight) {
+				if(jsonOutput.has("height")) //unconfirmed
+					blockNumber = jsonOutput.getInt("height");
+				hash = Sha256Hash.wrap(jsonOutput.getString("txid"));
+				index = jsonOutput.getInt("vout");
+				scryptBytes = HEX.decode(jsonOutput.getString("scriptPubKey"));
+				value = Coin.valueOf(jsonOutput.getLong("satoshis"));
 			}
+			utxos.add(new UTXO(hash, index, value, blockNumber, false, new Script(scryptBytes), address.toString()));
 		}
-		catch (final JSONException x)
-		{
-			log.info("problem parsing json from " + url, x);
-			return null;
-		}
-		catch (final IOException x)
-		{
-			log.info("problem querying unspent outputs from " + url, x);
-			return null;
-		}
+
+		return utxos;
 	}
 }
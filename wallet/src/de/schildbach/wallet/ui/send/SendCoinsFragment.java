@@ -61,11 +61,12 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
 
-import de.schildbach.wallet.AppDatabase;
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.BlockchainState;
+import de.schildbach.wallet.data.BlockchainStateRepository;
 import de.schildbach.wallet.data.PaymentIntent;
+import de.schildbach.wallet.data.WalletBalanceRepository;
 import de.schildbach.wallet.integration.android.BitcoinIntegration;
 import de.schildbach.wallet.livedata.Resource;
 import de.schildbach.wallet.ui.CheckPinDialog;
@@ -81,6 +82,7 @@ public class SendCoinsFragment extends Fragment {
     private Configuration config;
 
     protected final Handler handler = new Handler();
+    private boolean emptyWalletRequested = false;
 
     private static final int AUTH_REQUEST_CODE_MAX = 1;
     private static final int AUTH_REQUEST_CODE_SEND = 2;
@@ -149,7 +151,7 @@ public class SendCoinsFragment extends Fragment {
             }
         });
 
-        AppDatabase.getAppDatabase().blockchainStateDao().load().observe(this, new Observer<BlockchainState>() {
+        BlockchainStateRepository.getInstance().getState().observe(this, new Observer<BlockchainState>() {
             @Override
             public void onChanged(BlockchainState blockchainState) {
                 SendCoinsFragment.this.blockchainState = blockchainState;
@@ -361,9 +363,9 @@ public class SendCoinsFragment extends Fragment {
 
     private void showInsufficientMoneyDialog(Coin missing) {
 
-        final Wallet wallet = viewModel.getWallet();
-        final Coin estimated = wallet.getBalance(BalanceType.ESTIMATED);
-        final Coin available = wallet.getBalance(BalanceType.AVAILABLE);
+        final WalletBalanceRepository balances = WalletBalanceRepository.getInstance();
+        final Coin estimated = balances.getBalanceSync(BalanceType.ESTIMATED);
+        final Coin available = balances.getBalanceSync(BalanceType.AVAILABLE);
         final Coin pending = estimated.subtract(available);
 
         final MonetaryFormat dashFormat = config.getFormat();
@@ -419,28 +421,35 @@ public class SendCoinsFragment extends Fragment {
     }
 
     private void handleEmpty() {
-        final Coin available = viewModel.getWallet().getBalance(BalanceType.ESTIMATED);
-        enterAmountSharedViewModel.getApplyMaxAmountEvent().setValue(available);
-        
+        // the amount is read from the wallet by the dry run, the cached balance may lag behind
+        emptyWalletRequested = true;
         handler.post(dryrunRunnable);
     }
 
     private Runnable dryrunRunnable = new Runnable() {
         @Override
         public void run() {
+            final boolean emptyWallet = emptyWalletRequested;
+            emptyWalletRequested = false;
             if (getState() == SendCoinsViewModel.State.INPUT)
-                executeDryrun();
+                executeDryrun(emptyWallet);
 
             updateView();
         }
 
-        private void executeDryrun() {
+        private void executeDryrun(final boolean emptyWallet) {
 
             viewModel.dryrunSendRequest = null;
             viewModel.dryrunException = null;
 
-            final Coin amount = enterAmountSharedViewModel.getDashAmount();
             final Wallet wallet = viewModel.getWallet();
+            final Coin amount;
+            if (emptyWallet) {
+                amount = wallet.getBalance(BalanceType.ESTIMATED);
+                enterAmountSharedViewModel.getApplyMaxAmountEvent().setValue(amount);
+            } else {
+                amount = enterAmountSharedViewModel.getDashAmount();
+            }
             final Address dummyAddress = wallet.currentReceiveAddress(); // won't be used, tx is never committed
 
             if (Coin.ZERO.equals(amount)) {
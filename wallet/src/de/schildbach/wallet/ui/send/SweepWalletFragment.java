@@ -48,8 +48,6 @@ import org.bitcoinj.core.PrefixedChecksummedBytes;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
-import org.bitcoinj.core.TransactionInput;
-import org.bitcoinj.core.TransactionOutPoint;
 import org.bitcoinj.core.TransactionOutput;
 import org.bitcoinj.core.UTXO;
 import org.bitcoinj.core.VerificationException;
@@ -69,6 +67,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -79,6 +78,7 @@ import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
 import de.schildbach.wallet.data.DynamicFeeLoader;
 import de.schildbach.wallet.data.PaymentIntent;
+import de.schildbach.wallet.data.SpentOutpointIndex;
 import de.schildbach.wallet.rates.ExchangeRate;
 import de.schildbach.wallet.rates.ExchangeRatesViewModel;
 import de.schildbach.wallet.ui.InputParser.StringInputParser;
@@ -404,51 +404,56 @@ public class SweepWalletFragment extends Fragment {
         final RequestWalletBalanceTask.ResultCallback callback = new RequestWalletBalanceTask.ResultCallback() {
             @Override
             public void onResult(final Set<UTXO> utxos) {
-                dismissProgress();
-
-                // Filter UTXOs we've already spent and sort the rest.
-                final Set<Transaction> walletTxns = application.getWallet().getTransactions(false);
-                final Set<UTXO> sortedUtxos = new TreeSet<>(UTXO_COMPARATOR);
-                for (final UTXO utxo : utxos)
-                    if (!utxoSpentBy(walletTxns, utxo))
-                        sortedUtxos.add(utxo);
-
-                // Fake transaction funding the wallet to sweep.
-                final Map<Sha256Hash, Transaction> fakeTxns = new HashMap<>();
-                for (final UTXO utxo : sortedUtxos) {
-                    Transaction fakeTx = fakeTxns.get(utxo.getHash());
-                    if (fakeTx == null) {
-                        fakeTx = new FakeTransaction(Constants.NETWORK_PARAMETERS, utxo.getHash());
-                        fakeTx.getConfidence().setConfidenceType(ConfidenceType.BUILDING);
-                        fakeTxns.put(fakeTx.getTxId(), fakeTx);
-                    }
-                    final TransactionOutput fakeOutput = new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
-                            utxo.getValue(), utxo.getScript().getProgram());
-                    // Fill with output dummies as needed.
-                    while (fakeTx.getOutputs().size() < utxo.getIndex())
-                        fakeTx.addOutput(new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
-                                Coin.NEGATIVE_SATOSHI, new byte[]{}));
-                    // Add the actual output we will spend later.
-                    fakeTx.addOutput(fakeOutput);
-                }
-
-                walletToSweep.clearTransactions(0);
-                for (final Transaction tx : fakeTxns.values())
-                    walletToSweep.addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
-                log.info("built wallet to sweep:\n{}", walletToSweep.toString(false, true, false, null));
-
-                updateView();
-            }
-
-            private boolean utxoSpentBy(final Set<Transaction> transactions, final UTXO utxo) {
-                for (final Transaction tx : transactions) {
-                    for (final TransactionInput input : tx.getInputs()) {
-                        final TransactionOutPoint outpoint = input.getOutpoint();
-                        if (outpoint.getHash().equals(utxo.getHash()) && outpoint.getIndex() == utxo.getIndex())
-                            return true;
+                final SpentOutpointIndex spentOutpoints = application.getSpentOutpointIndex();
+                final List<ECKey> keys = walletToSweep.getImportedKeys();
+                backgroundHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        org.bitcoinj.core.Context.propagate(Constants.CONTEXT);
+
+                        // Filter UTXOs we've already spent and sort the rest.
+                        final Set<UTXO> sortedUtxos = new TreeSet<>(UTXO_COMPARATOR);
+                        for (final UTXO utxo : utxos)
+                            if (!spentOutpoints.isSpent(utxo))
+                                sortedUtxos.add(utxo);
+
+                        // Fake transaction funding the wallet to sweep.
+                        final Map<Sha256Hash, Transaction> fakeTxns = new HashMap<>();
+                        for (final UTXO utxo : sortedUtxos) {
+                            Transaction fakeTx = fakeTxns.get(utxo.getHash());
+                            if (fakeTx == null) {
+                                fakeTx = new FakeTransaction(Constants.NETWORK_PARAMETERS, utxo.getHash());
+                                fakeTx.getConfidence().setConfidenceType(ConfidenceType.BUILDING);
+                                fakeTxns.put(fakeTx.getTxId(), fakeTx);
+                            }
+                            final TransactionOutput fakeOutput = new TransactionOutput(Constants.NETWORK_PARAMETERS,
+                                    fakeTx, utxo.getValue(), utxo.getScript().getProgram());
+                            // Fill with output dummies as needed.
+                            while (fakeTx.getOutputs().size() < utxo.getIndex())
+                                fakeTx.addOutput(new TransactionOutput(Constants.NETWORK_PARAMETERS, fakeTx,
+                                        Coin.NEGATIVE_SATOSHI, new byte[]{}));
+                            // Add the actual output we will spend later.
+                            fakeTx.addOutput(fakeOutput);
+                        }
+
+                        // built aside and swapped in on the main thread, which reads and saves walletToSweep
+                        final KeyChainGroup group = KeyChainGroup.builder(Constants.NETWORK_PARAMETERS).build();
+                        group.importKeys(keys);
+                        final Wallet builtWallet = new Wallet(Constants.NETWORK_PARAMETERS, group);
+                        for (final Transaction tx : fakeTxns.values())
+                            builtWallet.addWalletTransaction(new WalletTransaction(WalletTransaction.Pool.UNSPENT, tx));
+                        log.info("built wallet to sweep:\n{}", builtWallet.toString(false, true, false, null));
+
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                walletToSweep = builtWallet;
+                                dismissProgress();
+                                updateView();
+                            }
+                        });
                     }
-                }
-                return false;
+                });
             }
 
             @Override
@@ -29,7 +29,7 @@ import androidx.constraintlayout.widget.ConstraintLayout
 import androidx.core.content.ContextCompat
 import de.schildbach.wallet.WalletApplication
 import de.schildbach.wallet.ui.ReceiveActivity
-import de.schildbach.wallet.util.Qr
+import de.schildbach.wallet.util.QrRenderer
 import de.schildbach.wallet.util.Toast
 import de.schildbach.wallet_test.R
 import kotlinx.android.synthetic.main.receive_info_view.view.*
@@ -55,7 +55,7 @@ class ReceiveInfoView(context: Context, attrs: AttributeSet?) : ConstraintLayout
         }
 
     private lateinit var paymentRequestUri: String
-    private lateinit var qrCodeBitmap: BitmapDrawable
+    private var qrRenderRequest: QrRenderer.Request? = null
 
     init {
         inflate(context, R.layout.receive_info_view, this)
@@ -96,10 +96,12 @@ class ReceiveInfoView(context: Context, attrs: AttributeSet?) : ConstraintLayout
     public fun refresh() {
         refreshData()
 
-        qrCodeBitmap = BitmapDrawable(resources, Qr.bitmap(paymentRequestUri))
-        qrCodeBitmap.isFilterBitmap = false
-
-        qr_preview.setImageDrawable(qrCodeBitmap)
+        qrRenderRequest?.cancel()
+        qrRenderRequest = QrRenderer.getInstance(context).render(paymentRequestUri) { bitmap ->
+            val qrCodeBitmap = BitmapDrawable(resources, bitmap)
+            qrCodeBitmap.isFilterBitmap = false
+            qr_preview.setImageDrawable(qrCodeBitmap)
+        }
         address_preview.text = address.toBase58() + "  "
 
         val addressSpannable = SpannableString.valueOf(address_preview.text)
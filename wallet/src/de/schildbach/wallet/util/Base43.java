@@ -16,8 +16,6 @@
 
 package de.schildbach.wallet.util;
 
-import com.google.common.base.Charsets;
-
 /**
  * Base43, derived from bitcoinj Base58. It's meant to be used for efficiently stuffing binary data into QR
  * codes. The alphabet is picked to match the 'Alphanumeric' input mode of QR codes as closely as possible,
@@ -37,119 +35,159 @@ public class Base43 {
             INDEXES[ALPHABET[i]] = i;
     }
 
-    public static String encode(byte[] input) {
+    // 43^5, the largest power of 43 that fits into 31 bits, so five digits are converted per pass
+    private static final int CHUNK_DIGITS = 5;
+    private static final long CHUNK = 43L * 43 * 43 * 43 * 43;
+    private static final long LIMB_MASK = 0xffffffffL;
+
+    public static String encode(final byte[] input) {
         if (input.length == 0)
             return "";
 
-        input = copyOfRange(input, 0, input.length);
+        final char[] output = new char[maxEncodedLength(input.length)];
+        final int length = encode(input, 0, input.length, output, 0);
+        return new String(output, 0, length);
+    }
 
+    /**
+     * @return the number of chars that encoding the given number of bytes needs at most
+     */
+    public static int maxEncodedLength(final int inputLength) {
+        // log(256) / log(43) is 1.474
+        return inputLength * 3 / 2 + 1;
+    }
+
+    /**
+     * Encodes into the given buffer, which needs room for {@link #maxEncodedLength(int)} chars.
+     *
+     * @return the number of chars written
+     */
+    public static int encode(final byte[] input, final int offset, final int length, final char[] output,
+            final int outputOffset) {
         // Count leading zeroes.
         int zeroCount = 0;
-        while (zeroCount < input.length && input[zeroCount] == 0)
+        while (zeroCount < length && input[offset + zeroCount] == 0)
             ++zeroCount;
 
-        // The actual encoding.
-        final byte[] temp = new byte[input.length * 2];
-        int j = temp.length;
+        // Pack the rest into 32 bit limbs, most significant first.
+        final int byteCount = length - zeroCount;
+        final int limbCount = (byteCount + 3) / 4;
+        final int[] limbs = new int[limbCount];
+        int from = offset + zeroCount;
+        for (int i = 0; i < limbCount; i++) {
+            final int bytesInLimb = i == 0 ? byteCount - (limbCount - 1) * 4 : 4;
+            int limb = 0;
+            for (int k = 0; k < bytesInLimb; k++)
+                limb = (limb << 8) | (input[from++] & 0xff);
+            limbs[i] = limb;
+        }
 
-        int startAt = zeroCount;
-        while (startAt < input.length) {
-            byte mod = divmod43(input, startAt);
-            if (input[startAt] == 0)
+        // The actual encoding, least significant digit first.
+        int j = outputOffset;
+        int startAt = 0;
+        while (startAt < limbCount) {
+            long remainder = 0;
+            for (int i = startAt; i < limbCount; i++) {
+                final long temp = (remainder << 32) | (limbs[i] & LIMB_MASK);
+                limbs[i] = (int) (temp / CHUNK);
+                remainder = temp % CHUNK;
+            }
+            while (startAt < limbCount && limbs[startAt] == 0)
                 ++startAt;
-            temp[--j] = (byte) ALPHABET[mod];
-        }
 
-        // Strip extra '1' if there are some after decoding.
-        while (j < temp.length && temp[j] == ALPHABET[0])
-            ++j;
+            // A full chunk of digits, except for the most significant one which has no leading zeroes.
+            final boolean last = startAt == limbCount;
+            for (int k = 0; k < CHUNK_DIGITS && (!last || remainder != 0); k++) {
+                output[j++] = ALPHABET[(int) (remainder % 43)];
+                remainder /= 43;
+            }
+        }
 
-        // Add as many leading '1' as there were leading zeros.
+        // Add as many leading zeroes as there were leading zero bytes.
         while (--zeroCount >= 0)
-            temp[--j] = (byte) ALPHABET[0];
-
-        final byte[] output = copyOfRange(temp, j, temp.length);
+            output[j++] = ALPHABET[0];
 
-        return new String(output, Charsets.US_ASCII);
+        reverse(output, outputOffset, j);
+        return j - outputOffset;
     }
 
     public static byte[] decode(final String input) throws IllegalArgumentException {
         if (input.length() == 0)
             return new byte[0];
 
-        final byte[] input43 = new byte[input.length()];
-        // Transform the String to a base43 byte sequence
-        for (int i = 0; i < input.length(); ++i) {
-            final char c = input.charAt(i);
-
-            int digit43 = -1;
-
-            if (c >= 0 && c < 128)
-                digit43 = INDEXES[c];
-
-            if (digit43 < 0)
-                throw new IllegalArgumentException("Illegal character " + c + " at " + i);
-
-            input43[i] = (byte) digit43;
-        }
+        final byte[] output = new byte[input.length()];
+        final int length = decode(input, 0, input.length(), output, 0);
+        return copyOfRange(output, 0, length);
+    }
 
+    /**
+     * Decodes the chars from {@code start} to {@code end} into the given buffer, which needs room
+     * for as many bytes as there are chars.
+     *
+     * @return the number of bytes written
+     */
+    public static int decode(final CharSequence input, final int start, final int end, final byte[] output,
+            final int outputOffset) throws IllegalArgumentException {
         // Count leading zeroes
         int zeroCount = 0;
-        while (zeroCount < input43.length && input43[zeroCount] == 0)
+        while (start + zeroCount < end && input.charAt(start + zeroCount) == ALPHABET[0])
             ++zeroCount;
 
-        // The encoding
-        final byte[] temp = new byte[input.length()];
-        int j = temp.length;
-
-        int startAt = zeroCount;
-        while (startAt < input43.length) {
-            byte mod = divmod256(input43, startAt);
-            if (input43[startAt] == 0)
-                ++startAt;
-
-            temp[--j] = mod;
+        // Accumulate the rest into 32 bit limbs, least significant first, five digits at a time.
+        final int digitCount = end - start - zeroCount;
+        final int[] limbs = new int[digitCount / 4 + 1];
+        int limbCount = 0;
+        int i = start + zeroCount;
+        int chunkDigits = digitCount % CHUNK_DIGITS;
+        if (chunkDigits == 0)
+            chunkDigits = CHUNK_DIGITS;
+        while (i < end) {
+            long chunk = 0;
+            long multiplier = 1;
+            for (int k = 0; k < chunkDigits; k++, i++) {
+                chunk = chunk * 43 + digit(input.charAt(i), i - start);
+                multiplier *= 43;
+            }
+            chunkDigits = CHUNK_DIGITS;
+
+            long carry = chunk;
+            for (int l = 0; l < limbCount; l++) {
+                final long temp = (limbs[l] & LIMB_MASK) * multiplier + carry;
+                limbs[l] = (int) temp;
+                carry = temp >>> 32;
+            }
+            if (carry != 0)
+                limbs[limbCount++] = (int) carry;
         }
 
-        // Do no add extra leading zeroes, move j to first non null byte.
-        while (j < temp.length && temp[j] == 0)
-            ++j;
-
-        return copyOfRange(temp, j - zeroCount, temp.length);
-    }
-
-    //
-    // number -> number / 43, returns number % 43
-    //
-    private static byte divmod43(final byte[] number, final int startAt) {
-        int remainder = 0;
-        for (int i = startAt; i < number.length; i++) {
-            final int digit256 = (int) number[i] & 0xFF;
-            final int temp = remainder * 256 + digit256;
-
-            number[i] = (byte) (temp / 43);
-
-            remainder = temp % 43;
+        // Leading zero bytes, then the number without leading zeroes, most significant byte first.
+        int j = outputOffset;
+        while (--zeroCount >= 0)
+            output[j++] = 0;
+        for (int l = limbCount - 1; l >= 0; l--) {
+            final int limb = limbs[l];
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                if (l == limbCount - 1 && (limb >>> shift) == 0)
+                    continue;
+                output[j++] = (byte) (limb >>> shift);
+            }
         }
-
-        return (byte) remainder;
+        return j - outputOffset;
     }
 
-    //
-    // number -> number / 256, returns number % 256
-    //
-    private static byte divmod256(final byte[] number43, final int startAt) {
-        int remainder = 0;
-        for (int i = startAt; i < number43.length; i++) {
-            final int digit58 = (int) number43[i] & 0xFF;
-            final int temp = remainder * 43 + digit58;
-
-            number43[i] = (byte) (temp / 256);
+    private static int digit(final char c, final int position) {
+        final int digit43 = c < 128 ? INDEXES[c] : -1;
+        if (digit43 < 0)
+            throw new IllegalArgumentException("Illegal character " + c + " at " + position);
+        return digit43;
+    }
 
-            remainder = temp % 256;
+    private static void reverse(final char[] chars, int from, int to) {
+        while (from < --to) {
+            final char c = chars[from];
+            chars[from++] = chars[to];
+            chars[to] = c;
         }
-
-        return (byte) remainder;
     }
 
     private static byte[] copyOfRange(final byte[] source, final int from, final int to) {
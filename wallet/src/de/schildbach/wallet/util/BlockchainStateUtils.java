@@ -20,6 +20,7 @@ package de.schildbach.wallet.util;
 import android.content.Context;
 import androidx.annotation.Nullable;
 import android.text.format.DateUtils;
+import android.text.format.Formatter;
 
 import de.schildbach.wallet.data.BlockchainState;
 import de.schildbach.wallet_test.R;
@@ -60,10 +61,40 @@ public class BlockchainStateUtils {
                 progressMessage = context.getString(R.string.blockchain_state_progress_months, downloading, months);
             }
 
-            return progressMessage;
+            final String timeLeft = getTimeLeftString(blockchainState, context);
+            return timeLeft != null
+                    ? context.getString(R.string.blockchain_state_progress_eta, progressMessage, timeLeft)
+                    : progressMessage;
         } else {
             return null;
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * @return the estimated time left and the download throughput, e.g. "about 3 min left, 120 kB/s",
+     * or null if no estimate is available yet
+     */
+    @Nullable
+    public static String getTimeLeftString(BlockchainState blockchainState, Context context) {
+        if (blockchainState == null || !blockchainState.hasEstimatedTimeLeft()) {
+            return null;
+        }
+
+        final long seconds = blockchainState.getEstimatedSecondsLeft();
+        final String timeLeft;
+        if (seconds < DateUtils.MINUTE_IN_MILLIS / DateUtils.SECOND_IN_MILLIS) {
+            timeLeft = context.getString(R.string.blockchain_state_eta_less_than_minute);
+        } else if (seconds < DateUtils.HOUR_IN_MILLIS / DateUtils.SECOND_IN_MILLIS) {
+            timeLeft = context.getString(R.string.blockchain_state_eta_minutes, seconds / 60);
+        } else {
+            timeLeft = context.getString(R.string.blockchain_state_eta_hours, seconds / 3600, (seconds % 3600) / 60);
+        }
+
+        if (blockchainState.getBytesPerSecond() <= 0) {
+            return timeLeft;
+        }
+        return context.getString(R.string.blockchain_state_eta_throughput, timeLeft,
+                Formatter.formatShortFileSize(context, blockchainState.getBytesPerSecond()));
+    }
+
+}
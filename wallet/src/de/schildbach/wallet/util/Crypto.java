@@ -20,8 +20,11 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Writer;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -32,12 +35,15 @@ import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.bouncycastle.crypto.PBEParametersGenerator;
 import org.bouncycastle.crypto.engines.AESFastEngine;
 import org.bouncycastle.crypto.generators.OpenSSLPBEParametersGenerator;
+import org.bouncycastle.crypto.io.CipherInputStream;
+import org.bouncycastle.crypto.io.CipherOutputStream;
 import org.bouncycastle.crypto.modes.CBCBlockCipher;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 
 /**
  * This class encrypts and decrypts a string in a manner that is compatible with OpenSSL.
@@ -268,6 +274,61 @@ public class Crypto {
         }
     }
 
+    /**
+     * Password based encryption using AES - CBC 256 bits, as a stream. Produces the same format as
+     * {@link #encrypt(byte[], char[])}, but never holds more than a few blocks in memory.
+     * 
+     * @param cipherOut
+     *            The writer to receive the encrypted text. It is closed when the returned stream is closed.
+     * @param password
+     *            The password to use for encryption
+     * @return The stream to write the plain bytes to. It must be closed to write the final block.
+     * @throws IOException
+     */
+    public static OutputStream encryptStream(final Writer cipherOut, final char[] password) throws IOException {
+        final byte[] salt = new byte[SALT_LENGTH];
+        secureRandom.nextBytes(salt);
+
+        final BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+        cipher.init(true, getAESPasswordKey(password, salt));
+
+        final OutputStream base64Out = BASE64_ENCRYPT.encodingStream(cipherOut);
+        base64Out.write(OPENSSL_SALTED_BYTES);
+        base64Out.write(salt);
+        return new CipherOutputStream(base64Out, cipher);
+    }
+
+    /**
+     * Decrypt a stream previously encrypted with this class, or with {@link #encrypt(byte[], char[])}.
+     * A wrong password or corrupted text is only detected at the end of the stream.
+     * 
+     * @param cipherIn
+     *            The reader of the encrypted text. It is closed when the returned stream is closed.
+     * @param password
+     *            password to use for decryption
+     * @return The stream of decrypted bytes
+     * @throws IOException
+     */
+    public static InputStream decryptStream(final Reader cipherIn, final char[] password) throws IOException {
+        final InputStream base64In = BASE64_DECRYPT.decodingStream(cipherIn);
+
+        final byte[] saltedPrefix = new byte[OPENSSL_SALTED_BYTES.length + SALT_LENGTH];
+        final int prefixLength;
+        try {
+            prefixLength = ByteStreams.read(base64In, saltedPrefix, 0, saltedPrefix.length);
+        } catch (final BaseEncoding.DecodingException x) {
+            throw new IOException("invalid base64 encoding", x);
+        }
+        if (prefixLength < saltedPrefix.length)
+            throw new IOException("out of salt");
+        final byte[] salt = Arrays.copyOfRange(saltedPrefix, OPENSSL_SALTED_BYTES.length, saltedPrefix.length);
+
+        final BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESFastEngine()));
+        cipher.init(false, getAESPasswordKey(password, salt));
+
+        return new CipherInputStream(base64In, cipher);
+    }
+
     /**
      * Concatenate two byte arrays.
      */
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
@@ -46,6 +47,10 @@ public class Qr {
 
     private static final Logger log = LoggerFactory.getLogger(Qr.class);
 
+    /**
+     * Encodes on the calling thread, which takes a while for long content. Screens use
+     * {@link QrRenderer} instead.
+     */
     public static Bitmap bitmap(final String content) {
         try {
             final Hashtable<EncodeHintType, Object> hints = new Hashtable<EncodeHintType, Object>();
@@ -57,10 +62,15 @@ public class Qr {
             final int height = result.getHeight();
             final byte[] pixels = new byte[width * height];
 
+            // a row at a time, reading the bits straight from its words
+            BitArray row = new BitArray(width);
             for (int y = 0; y < height; y++) {
+                row = result.getRow(y, row);
+                final int[] words = row.getBitArray();
                 final int offset = y * width;
                 for (int x = 0; x < width; x++) {
-                    pixels[offset + x] = (byte) (result.get(x, y) ? -1 : 0);
+                    if ((words[x >>> 5] & (1 << (x & 0x1f))) != 0)
+                        pixels[offset + x] = -1;
                 }
             }
 
@@ -75,19 +85,22 @@ public class Qr {
 
     public static String encodeCompressBinary(final byte[] bytes) {
         try {
-            final ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length);
-            final GZIPOutputStream gos = new GZIPOutputStream(bos);
+            // Base43 converts the payload as one big number, and whether to compress at all depends
+            // on the compressed length, so the gzip output is buffered. It is encoded from the
+            // buffer without copying it first.
+            final PayloadBuffer gzipped = new PayloadBuffer(bytes.length);
+            final GZIPOutputStream gos = new GZIPOutputStream(gzipped);
             gos.write(bytes);
             gos.close();
 
-            final byte[] gzippedBytes = bos.toByteArray();
-            final boolean useCompressioon = gzippedBytes.length < bytes.length;
+            final boolean useCompression = gzipped.size() < bytes.length;
 
-            final StringBuilder str = new StringBuilder();
-            str.append(useCompressioon ? 'Z' : '-');
-            str.append(Base43.encode(useCompressioon ? gzippedBytes : bytes));
-
-            return str.toString();
+            // encoded right behind the prefix, without going through an intermediate string
+            final char[] chars = new char[1 + Base43.maxEncodedLength(useCompression ? gzipped.size() : bytes.length)];
+            chars[0] = useCompression ? 'Z' : '-';
+            final int length = useCompression ? gzipped.encodeBase43(chars, 1)
+                    : Base43.encode(bytes, 0, bytes.length, chars, 1);
+            return new String(chars, 0, 1 + length);
         } catch (final IOException x) {
             throw new RuntimeException(x);
         }
@@ -99,9 +112,10 @@ public class Qr {
 
     public static byte[] decodeDecompressBinary(final String content) throws IOException {
         final boolean useCompression = content.charAt(0) == 'Z';
-        final byte[] bytes = Base43.decode(content.substring(1));
+        final byte[] bytes = new byte[content.length() - 1];
+        final int length = Base43.decode(content, 1, content.length(), bytes, 0);
 
-        InputStream is = new ByteArrayInputStream(bytes);
+        InputStream is = new ByteArrayInputStream(bytes, 0, length);
         if (useCompression)
             is = new GZIPInputStream(is);
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -119,4 +133,14 @@ public class Qr {
     public static byte[] decodeBinary(final String content) throws IOException {
         return Base43.decode(content);
     }
+
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+        private PayloadBuffer(final int size) {
+            super(size);
+        }
+
+        private int encodeBase43(final char[] output, final int outputOffset) {
+            return Base43.encode(buf, 0, count, output, outputOffset);
+        }
+    }
 }
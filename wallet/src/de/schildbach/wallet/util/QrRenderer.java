@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.util;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+/**
+ * Renders QR codes on a background thread and keeps the bitmaps in an LRU cache sized to the
+ * memory class of the device, so showing the same content again is free.
+ *
+ * Callers that render a new content while a previous one may still be pending, like a request
+ * whose amount is being typed, cancel the previous {@link Request} so its result is dropped.
+ */
+public class QrRenderer {
+
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param bitmap the QR code, or null if the content could not be encoded
+         */
+        void onRendered(@Nullable Bitmap bitmap);
+    }
+
+    public static final class Request {
+        private volatile boolean cancelled = false;
+        @Nullable
+        private volatile Future<?> future;
+
+        /**
+         * Drops the result. A render that has not started yet is not done at all.
+         */
+        public void cancel() {
+            cancelled = true;
+            final Future<?> future = this.future;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+
+    private static QrRenderer instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> cache;
+
+    public static synchronized QrRenderer getInstance(final Context context) {
+        if (instance == null)
+            instance = new QrRenderer(context.getApplicationContext());
+        return instance;
+    }
+
+    private QrRenderer(final Context context) {
+        final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        // 1/64th of the heap, QR codes are single byte per pixel and small
+        final int cacheSizeBytes = activityManager.getMemoryClass() * 1024 * 1024 / 64;
+        cache = new LruCache<String, Bitmap>(cacheSizeBytes) {
+            @Override
+            protected int sizeOf(final String content, final Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return the cached QR code for the content, or null if it was not rendered yet
+     */
+    @Nullable
+    public Bitmap getCached(final String content) {
+        return cache.get(content);
+    }
+
+    /**
+     * Renders the content unless it is cached. The callback is called right away for cached
+     * content, otherwise later on the main thread.
+     */
+    public Request render(final String content, final Callback callback) {
+        final Request request = new Request();
+        final Bitmap cached = cache.get(content);
+        if (cached != null) {
+            callback.onRendered(cached);
+            return request;
+        }
+
+        request.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled)
+                    return;
+                final Bitmap bitmap = Qr.bitmap(content);
+                if (bitmap != null)
+                    cache.put(content, bitmap);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.cancelled)
+                            callback.onRendered(bitmap);
+                    }
+                });
+            }
+        });
+        return request;
+    }
+}
@@ -17,6 +17,7 @@
 
 package de.schildbach.wallet.util;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -26,6 +27,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.Writer;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -54,8 +56,10 @@ import org.bitcoinj.wallet.KeyChainGroup;
 import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
 import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.bouncycastle.crypto.io.InvalidCipherTextIOException;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 
 import de.schildbach.wallet.Constants;
 import de.schildbach.wallet.WalletApplication;
@@ -200,25 +204,81 @@ public class WalletUtils {
         return true;
     }
 
+    // enough for the protobuf reader to look at the network id, which is the first field
+    private static final int PROTOBUF_SNIFF_BYTES = 8192;
+
+    /**
+     * Reads the stream only once, so it can be a decrypting stream that is never held in memory
+     * as a whole. Whether it is protobuf is told from its first bytes.
+     */
     public static Wallet restoreWalletFromProtobufOrBase58(final InputStream is,
             final NetworkParameters expectedNetworkParameters) throws IOException {
-        is.mark((int) Constants.BACKUP_MAX_CHARS);
+        final InputStream in = is.markSupported() ? is : new BufferedInputStream(is, PROTOBUF_SNIFF_BYTES);
+        in.mark(PROTOBUF_SNIFF_BYTES);
+        final boolean isProtobuf = WalletProtobufSerializer.isWallet(in);
+        in.reset();
 
-        try {
-            return restoreWalletFromProtobuf(is, expectedNetworkParameters);
-        } catch (final IOException x) {
+        if (isProtobuf) {
+            try {
+                return restoreWalletFromProtobuf(in, expectedNetworkParameters);
+            } catch (final IOException x) {
+                throw new IOException("cannot read protobuf (" + x.getMessage() + ")", x);
+            }
+        } else {
             try {
-                is.reset();
-                Wallet wallet = restorePrivateKeysFromBase58(is, expectedNetworkParameters);
+                Wallet wallet = restorePrivateKeysFromBase58(in, expectedNetworkParameters);
                 wallet.upgradeToDeterministic(null); //this will result in a different HD seed each time
                 return wallet;
-            } catch (final IOException x2) {
-                throw new IOException(
-                        "cannot read protobuf (" + x.getMessage() + ") or base58 (" + x2.getMessage() + ")", x);
+            } catch (final IOException x) {
+                throw new IOException("cannot read protobuf or base58 (" + x.getMessage() + ")", x);
             }
         }
     }
 
+    /**
+     * Restores from a backup encrypted by {@link Crypto}, decrypting while reading. A wrong password
+     * decrypts to garbage that is neither protobuf nor base58, and is only told by the padding at
+     * the end of the stream, so that is looked at before reporting the backup as unreadable.
+     * Closes the reader.
+     */
+    public static Wallet restoreWalletFromEncrypted(final Reader cipherIn, final char[] password,
+            final NetworkParameters expectedNetworkParameters) throws IOException {
+        final InputStream is;
+        try {
+            is = Crypto.decryptStream(cipherIn, password);
+        } catch (final IOException x) {
+            cipherIn.close();
+            throw x;
+        }
+        try {
+            return restoreWalletFromProtobufOrBase58(is, expectedNetworkParameters);
+        } catch (final IOException x) {
+            if (isBadPassword(x, is))
+                throw new IOException("bad password", x);
+            throw x;
+        } finally {
+            try {
+                is.close();
+            } catch (final IOException x) {
+                // swallow, a bad password was already reported
+            }
+        }
+    }
+
+    private static boolean isBadPassword(final IOException readException, final InputStream decrypted) {
+        for (Throwable cause = readException; cause != null; cause = cause.getCause())
+            if (cause instanceof InvalidCipherTextIOException)
+                return true;
+        try {
+            ByteStreams.exhaust(decrypted);
+            return false;
+        } catch (final InvalidCipherTextIOException x) {
+            return true;
+        } catch (final IOException x) {
+            return false;
+        }
+    }
+
     public static Wallet restoreWalletFromProtobuf(final InputStream is,
             final NetworkParameters expectedNetworkParameters) throws IOException {
         try {
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.bitcoinj.wallet;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Lets the app read several parts of a {@link Wallet} as one consistent snapshot. The locks of the
+ * wallet are only visible within this package.
+ */
+public final class WalletLocks {
+
+    private WalletLocks() {
+    }
+
+    /**
+     * Calls the supplier while holding both locks of the wallet, taken in the order the wallet
+     * takes them itself. Nothing else can change the wallet meanwhile, so keep it short.
+     */
+    public static <T> T getLocked(final Wallet wallet, final Supplier<T> supplier) {
+        wallet.lock.lock();
+        wallet.keyChainGroupLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            wallet.keyChainGroupLock.unlock();
+            wallet.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.google.common.hash.HashCode;
+import com.google.protobuf.ByteString;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.crypto.KeyCrypterScrypt;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.wallet.KeyChainGroup;
+import org.bitcoinj.wallet.Protos;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletExtension;
+import org.bitcoinj.wallet.WalletProtobufSerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class WalletKeyBackupTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    private Wallet wallet;
+
+    @Before
+    public void setUp() {
+        wallet = new Wallet(PARAMS, KeyChainGroup.builder(PARAMS).fromRandom(Script.ScriptType.P2PKH).build());
+        wallet.importKeys(Arrays.asList(new ECKey(), new ECKey()));
+        wallet.addExtension(new TestExtension("test.extension", new byte[] { 1, 2, 3 }));
+        wallet.setDescription("test wallet");
+        wallet.setTag("test.tag", ByteString.copyFromUtf8("tag data"));
+    }
+
+    @Test
+    public void matchesStrippedWalletProto() {
+        assertEquals(strippedWalletToProto(wallet), WalletKeyBackup.keyBackupToProto(wallet));
+    }
+
+    @Test
+    public void matchesStrippedWalletProto_encrypted() {
+        final KeyCrypterScrypt keyCrypter = new KeyCrypterScrypt(2);
+        wallet.encrypt(keyCrypter, keyCrypter.deriveKey("password"));
+
+        assertEquals(strippedWalletToProto(wallet), WalletKeyBackup.keyBackupToProto(wallet));
+    }
+
+    @Test
+    public void fingerprintCoversDescriptionAndTags() {
+        final HashCode fingerprint = WalletKeyBackup.fingerprint(wallet);
+
+        wallet.setDescription("renamed wallet");
+        final HashCode renamedFingerprint = WalletKeyBackup.fingerprint(wallet);
+        assertNotEquals(fingerprint, renamedFingerprint);
+
+        wallet.setTag("test.tag", ByteString.copyFromUtf8("other tag data"));
+        assertNotEquals(renamedFingerprint, WalletKeyBackup.fingerprint(wallet));
+    }
+
+    private static Protos.Wallet strippedWalletToProto(final Wallet wallet) {
+        return new WalletProtobufSerializer().walletToProto(wallet).toBuilder()
+                .clearTransaction()
+                .clearLastSeenBlockHash()
+                .setLastSeenBlockHeight(-1)
+                .clearLastSeenBlockTimeSecs()
+                .build();
+    }
+
+    private static class TestExtension implements WalletExtension {
+        private final String id;
+        private final byte[] data;
+
+        private TestExtension(final String id, final byte[] data) {
+            this.id = id;
+            this.data = data;
+        }
+
+        @Override
+        public String getWalletExtensionID() {
+            return id;
+        }
+
+        @Override
+        public boolean isWalletExtensionMandatory() {
+            return false;
+        }
+
+        @Override
+        public byte[] serializeWalletExtension() {
+            return data;
+        }
+
+        @Override
+        public void deserializeWalletExtension(final Wallet containingWallet, final byte[] data) {
+        }
+    }
+}
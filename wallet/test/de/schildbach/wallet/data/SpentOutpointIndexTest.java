@@ -0,0 +1,155 @@
+/*
+ * Copyright 2021 Dash Core Group.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.wallet.data;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.bitcoinj.core.AbstractBlockChain;
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.StoredBlock;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionConfidence.ConfidenceType;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.wallet.KeyChainGroup;
+import org.bitcoinj.wallet.Wallet;
+import org.bitcoinj.wallet.WalletTransaction;
+import org.bitcoinj.wallet.WalletTransaction.Pool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Collections;
+
+public class SpentOutpointIndexTest {
+    private static final NetworkParameters PARAMS = TestNet3Params.get();
+
+    private Wallet wallet;
+    private ECKey key;
+    private SpentOutpointIndex index;
+
+    @Before
+    public void setUp() {
+        wallet = new Wallet(PARAMS, KeyChainGroup.builder(PARAMS).build());
+        key = new ECKey();
+        wallet.importKey(key);
+        // the synthetic transactions are not signed
+        wallet.setAcceptRiskyTransactions(true);
+        index = new SpentOutpointIndex(wallet);
+    }
+
+    @After
+    public void tearDown() {
+        index.stop();
+    }
+
+    @Test
+    public void pendingSpender() {
+        final TransactionOutPoint outpoint = outpoint("pending");
+        wallet.addWalletTransaction(new WalletTransaction(Pool.PENDING, spender(outpoint)));
+
+        assertTrue(index.isSpent(outpoint));
+        assertFalse(index.isSpent(outpoint("other")));
+    }
+
+    @Test
+    public void deadSpender() {
+        final TransactionOutPoint outpoint = outpoint("dead");
+        final Transaction spender = spender(outpoint);
+        spender.getConfidence().setConfidenceType(ConfidenceType.DEAD);
+        wallet.addWalletTransaction(new WalletTransaction(Pool.DEAD, spender));
+
+        assertFalse(index.isSpent(outpoint));
+    }
+
+    @Test
+    public void receivedAfterBuild() {
+        index.start();
+        final TransactionOutPoint outpoint = outpoint("received");
+        assertFalse(index.isSpent(outpoint));
+
+        wallet.receivePending(spender(key, outpoint), null);
+
+        assertTrue(index.isSpent(outpoint));
+    }
+
+    @Test
+    public void becomesDeadAfterBuild() throws Exception {
+        index.start();
+        final TransactionOutPoint outpoint = outpoint("double spent");
+        final TransactionOutPoint otherOutpoint = outpoint("only spent by the dead one");
+        wallet.receivePending(spender(key, outpoint, otherOutpoint), null);
+        assertTrue(index.isSpent(otherOutpoint));
+
+        // confirming a double spend kills the pending spender
+        wallet.receiveFromBlock(spender(key, outpoint), block(Sha256Hash.ZERO_HASH, 1, 0),
+                AbstractBlockChain.NewBlockType.BEST_CHAIN, 0);
+
+        assertTrue(index.isSpent(outpoint));
+        assertFalse(index.isSpent(otherOutpoint));
+    }
+
+    @Test
+    public void reorganizedAfterBuild() throws Exception {
+        index.start();
+        final TransactionOutPoint outpoint = outpoint("double spent");
+        final TransactionOutPoint otherOutpoint = outpoint("only spent on the old chain");
+        final StoredBlock splitPoint = block(Sha256Hash.ZERO_HASH, 0, 0);
+        final StoredBlock oldBlock = block(splitPoint.getHeader().getHash(), 1, 1);
+        final StoredBlock newBlock = block(splitPoint.getHeader().getHash(), 1, 2);
+        wallet.receiveFromBlock(spender(key, outpoint, otherOutpoint), oldBlock,
+                AbstractBlockChain.NewBlockType.BEST_CHAIN, 0);
+        wallet.receiveFromBlock(spender(key, outpoint), newBlock, AbstractBlockChain.NewBlockType.SIDE_CHAIN, 0);
+        assertTrue(index.isSpent(otherOutpoint));
+
+        wallet.reorganize(splitPoint, Collections.singletonList(oldBlock), Collections.singletonList(newBlock));
+
+        assertTrue(index.isSpent(outpoint));
+        assertFalse(index.isSpent(otherOutpoint));
+    }
+
+    private static TransactionOutPoint outpoint(final String seed) {
+        return new TransactionOutPoint(PARAMS, 0, Sha256Hash.of(seed.getBytes()));
+    }
+
+    private static Transaction spender(final TransactionOutPoint outpoint) {
+        return spender(new ECKey(), outpoint);
+    }
+
+    private static Transaction spender(final ECKey to, final TransactionOutPoint... outpoints) {
+        final Transaction tx = new Transaction(PARAMS);
+        for (final TransactionOutPoint outpoint : outpoints)
+            tx.addInput(new TransactionInput(PARAMS, tx, new byte[0], outpoint));
+        tx.addOutput(Coin.COIN, to);
+        return tx;
+    }
+
+    private static StoredBlock block(final Sha256Hash prevBlockHash, final int height, final long nonce) {
+        final Block header = new Block(PARAMS, Block.BLOCK_VERSION_GENESIS, prevBlockHash, Sha256Hash.ZERO_HASH,
+                System.currentTimeMillis() / 1000, Block.EASIEST_DIFFICULTY_TARGET, nonce,
+                Collections.<Transaction>emptyList());
+        return new StoredBlock(header, BigInteger.valueOf(height), height);
+    }
+}
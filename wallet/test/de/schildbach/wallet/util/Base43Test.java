@@ -19,6 +19,11 @@ package de.schildbach.wallet.util;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -47,4 +52,66 @@ public class Base43Test {
 
         assertArrayEquals("Hello World".getBytes(), Base43.decode("RNO2-MYFN0D35RHM"));
     }
+
+    @Test
+    public void leadingZeroes() throws Exception {
+        assertEquals("000", Base43.encode(new byte[3]));
+        assertArrayEquals(new byte[3], Base43.decode("000"));
+
+        assertEquals("005.", Base43.encode(new byte[] { 0x0, 0x0, (byte) 0xff }));
+        assertArrayEquals(new byte[] { 0x0, 0x0, (byte) 0xff }, Base43.decode("005."));
+    }
+
+    @Test
+    public void randomAgainstReference() throws Exception {
+        final Random random = new Random(43);
+        for (int i = 0; i < 500; i++) {
+            final byte[] bytes = new byte[random.nextInt(600)];
+            random.nextBytes(bytes);
+            if (bytes.length > 0 && random.nextBoolean())
+                bytes[0] = 0;
+
+            final String encoded = Base43.encode(bytes);
+            assertEquals(referenceEncode(bytes), encoded);
+            assertArrayEquals(bytes, Base43.decode(encoded));
+        }
+    }
+
+    @Test
+    public void intoBuffers() throws Exception {
+        final byte[] bytes = "Hello World".getBytes();
+        final char[] chars = new char[2 + Base43.maxEncodedLength(bytes.length)];
+        final int encodedLength = Base43.encode(bytes, 0, bytes.length, chars, 2);
+        assertEquals("RNO2-MYFN0D35RHM", new String(chars, 2, encodedLength));
+
+        final String input = "--RNO2-MYFN0D35RHM";
+        final byte[] decoded = new byte[1 + input.length()];
+        final int decodedLength = Base43.decode(input, 2, input.length(), decoded, 1);
+        assertArrayEquals(bytes, Arrays.copyOfRange(decoded, 1, 1 + decodedLength));
+    }
+
+    @Test
+    public void illegalCharacter() throws Exception {
+        try {
+            Base43.decode("RNO2#MYFN");
+            fail();
+        } catch (final IllegalArgumentException x) {
+            // expected
+        }
+    }
+
+    private static String referenceEncode(final byte[] bytes) {
+        final String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ$*+-./:";
+        final BigInteger base = BigInteger.valueOf(43);
+        final StringBuilder str = new StringBuilder();
+        BigInteger number = new BigInteger(1, bytes);
+        while (number.signum() > 0) {
+            final BigInteger[] divmod = number.divideAndRemainder(base);
+            str.append(alphabet.charAt(divmod[1].intValue()));
+            number = divmod[0];
+        }
+        for (int i = 0; i < bytes.length && bytes[i] == 0; i++)
+            str.append(alphabet.charAt(0));
+        return str.reverse().toString();
+    }
 }
@@ -26,12 +26,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
 
 import org.bitcoinj.wallet.WalletProtobufSerializer;
 import org.junit.Test;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 
 /**
  * @author Andreas Schildbach
@@ -89,6 +95,30 @@ public class CryptoTest {
         }
     }
 
+    @Test
+    public void roundtripDifferentStreamSizes() throws Exception {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream(4096);
+        while (stream.toByteArray().length < 4096) {
+            final byte[] plainBytes = stream.toByteArray();
+            assertArrayEquals(plainBytes, decryptStream(encryptStream(plainBytes, PASSWORD), PASSWORD));
+
+            stream.write(42);
+        }
+    }
+
+    @Test
+    public void streamCompatibleWithBytes() throws Exception {
+        final byte[] plainBytes = new byte[100000];
+        new Random(0).nextBytes(plainBytes);
+        assertArrayEquals(plainBytes, Crypto.decryptBytes(encryptStream(plainBytes, PASSWORD), PASSWORD));
+        assertArrayEquals(plainBytes, decryptStream(Crypto.encrypt(plainBytes, PASSWORD), PASSWORD));
+    }
+
+    @Test(expected = IOException.class)
+    public void streamWrongPassword() throws Exception {
+        decryptStream(encryptStream(PLAIN_BYTES, PASSWORD), "wrong".toCharArray());
+    }
+
     @Test
     public void backups() throws Exception {
         final byte[] backup = Crypto.decryptBytes(readBackupFromResource("dash-wallet-backup-testnet-5.18"),
@@ -100,6 +130,31 @@ public class CryptoTest {
         assertTrue(WalletProtobufSerializer.isWallet(new ByteArrayInputStream(backupCrLf)));
     }
 
+    @Test
+    public void backupsStream() throws Exception {
+        final byte[] backup = decryptStream(readBackupFromResource("dash-wallet-backup-testnet-5.18"), PASSWORD);
+        assertTrue(WalletProtobufSerializer.isWallet(new ByteArrayInputStream(backup)));
+
+        final byte[] backupCrLf = decryptStream(readBackupFromResource("dash-wallet-backup-testnet-5.18-crlf"),
+                PASSWORD);
+        assertTrue(WalletProtobufSerializer.isWallet(new ByteArrayInputStream(backupCrLf)));
+    }
+
+    private static String encryptStream(final byte[] plainBytes, final char[] password) throws IOException {
+        final StringWriter cipherText = new StringWriter();
+        final OutputStream plainOut = Crypto.encryptStream(cipherText, password);
+        plainOut.write(plainBytes);
+        plainOut.close();
+        return cipherText.toString();
+    }
+
+    private static byte[] decryptStream(final String cipherText, final char[] password) throws IOException {
+        final InputStream plainIn = Crypto.decryptStream(new StringReader(cipherText), password);
+        final byte[] plainBytes = ByteStreams.toByteArray(plainIn);
+        plainIn.close();
+        return plainBytes;
+    }
+
     private String readBackupFromResource(final String filename) throws IOException {
         final BufferedReader reader = new BufferedReader(
                 new InputStreamReader(getClass().getResourceAsStream(filename), Charsets.UTF_8));
@@ -17,12 +17,20 @@
 
 package de.schildbach.wallet.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.bitcoinj.params.MainNetParams;
 import org.bitcoinj.params.TestNet3Params;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+
 /**
  * @author Andreas Schildbach
  */
@@ -58,4 +66,25 @@ public class WalletUtilsTest {
         WalletUtils.restoreWalletFromProtobufOrBase58(getClass().getResourceAsStream("bitcoin-backup-base58-testnet"),
                 MainNetParams.get());
     }
+
+    @Test
+    public void restoreWalletFromEncrypted() throws Exception {
+        WalletUtils.restoreWalletFromEncrypted(readerFromResource("dash-wallet-backup-testnet-5.18"),
+                "password".toCharArray(), TestNet3Params.get());
+    }
+
+    @Test
+    public void restoreWalletFromEncrypted_wrongPassword() throws Exception {
+        try {
+            WalletUtils.restoreWalletFromEncrypted(readerFromResource("dash-wallet-backup-testnet-5.18"),
+                    "wrong".toCharArray(), TestNet3Params.get());
+            fail("restored with wrong password");
+        } catch (final IOException x) {
+            assertEquals("bad password", x.getMessage());
+        }
+    }
+
+    private Reader readerFromResource(final String filename) {
+        return new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(filename), Charsets.UTF_8));
+    }
 }